@@ -0,0 +1,53 @@
+// Import throughput: ROWS new positions through POST /positions one by one (CONCURRENCY in flight)
+// vs the same number through POST /positions:bulkUpsert in requests of BULK_SIZE items.
+//
+//   k6 run -e ROWS=10000 loadtest/positions-bulk.js
+//
+// Prints rows/sec for both paths; the bulk responses also carry the server-side rowsPerSecond.
+import http from 'k6/http';
+import { check } from 'k6';
+
+const BASE = __ENV.BASE_URL || 'http://localhost:8085';
+const TENANT = __ENV.TENANT || 'loadtest';
+const ROWS = Number(__ENV.ROWS || 10000);
+const CLIENTS = Number(__ENV.CLIENTS || 100);
+const CONCURRENCY = Number(__ENV.CONCURRENCY || 16);
+const BULK_SIZE = Number(__ENV.BULK_SIZE || 5000);
+
+export const options = {
+  scenarios: {
+    compare: { executor: 'shared-iterations', vus: 1, iterations: 1, maxDuration: '60m' },
+  },
+};
+
+const headers = { 'Content-Type': 'application/json', 'X-Tenant-Id': TENANT, 'X-Client-Id': 'import' };
+
+function item(run, i) {
+  return { clientId: `${run}-c${i % CLIENTS}`, symbol: `SYM${i}`, quantity: 10 + i, avgPrice: 100.25 };
+}
+
+export default function () {
+  const run = `imp${Date.now()}`;
+
+  let start = Date.now();
+  for (let i = 0; i < ROWS; i += CONCURRENCY) {
+    const reqs = [];
+    for (let j = i; j < Math.min(i + CONCURRENCY, ROWS); j++) {
+      reqs.push(['POST', `${BASE}/positions`, JSON.stringify(item(`${run}r`, j)), { headers }]);
+    }
+    http.batch(reqs).forEach((res) => check(res, { 'create is 201': (x) => x.status === 201 }));
+  }
+  const perRowSecs = (Date.now() - start) / 1000;
+
+  start = Date.now();
+  for (let i = 0; i < ROWS; i += BULK_SIZE) {
+    const items = [];
+    for (let j = i; j < Math.min(i + BULK_SIZE, ROWS); j++) items.push(item(`${run}b`, j));
+    const res = http.post(`${BASE}/positions:bulkUpsert`, JSON.stringify({ items }), { headers, timeout: '10m' });
+    check(res, { 'bulk is 200': (x) => x.status === 200 });
+  }
+  const bulkSecs = (Date.now() - start) / 1000;
+
+  console.log(`per-row: ${ROWS} rows in ${perRowSecs}s = ${Math.round(ROWS / perRowSecs)} rows/s`);
+  console.log(`bulk:    ${ROWS} rows in ${bulkSecs}s = ${Math.round(ROWS / bulkSecs)} rows/s`);
+}
@@ -0,0 +1,60 @@
+// k6 polling test: every VU behaves like a dashboard that re-fetches one position and one client list
+// every 2s with If-None-Match, the way the UIs poll.
+//
+//   k6 run -e VUS=500 -e DURATION=60s --summary-export=poll.json loadtest/positions-poll.js
+//
+// not_modified is the share of polls answered with 304; compare http_req_duration per name tag and
+// the server-side http_server_requests_seconds{status="304"} against a build without conditional GET.
+import http from 'k6/http';
+import { check, sleep } from 'k6';
+import { Rate } from 'k6/metrics';
+
+const BASE = __ENV.BASE_URL || 'http://localhost:8085';
+const TENANT = __ENV.TENANT || 'loadtest';
+const POSITIONS = Number(__ENV.POSITIONS || 500);
+const CLIENTS = Number(__ENV.CLIENTS || 50);
+const POLL_SECONDS = Number(__ENV.POLL_SECONDS || 2);
+
+const notModified = new Rate('not_modified');
+
+export const options = {
+  vus: Number(__ENV.VUS || 500),
+  duration: __ENV.DURATION || '60s',
+  summaryTrendStats: ['avg', 'p(50)', 'p(95)', 'p(99)', 'max'],
+};
+
+function headers(clientId, etag) {
+  const h = { 'Content-Type': 'application/json', 'X-Tenant-Id': TENANT, 'X-Client-Id': clientId };
+  if (etag) h['If-None-Match'] = etag;
+  return h;
+}
+
+export function setup() {
+  const ids = [];
+  for (let i = 0; i < POSITIONS; i++) {
+    const clientId = `c${i % CLIENTS}`;
+    const res = http.post(`${BASE}/positions`, JSON.stringify({
+      clientId, symbol: `SYM${i % 97}`, quantity: 10 + i, avgPrice: 100.25,
+    }), { headers: headers(clientId) });
+    if (res.status === 201) ids.push(res.json('id'));
+  }
+  return { ids };
+}
+
+// per VU, kept across iterations like a browser cache
+const etags = {};
+
+function poll(url, clientId, name) {
+  const res = http.get(url, { headers: headers(clientId, etags[url]), tags: { name } });
+  check(res, { [`${name} is 200/304`]: (x) => x.status === 200 || x.status === 304 });
+  notModified.add(res.status === 304);
+  if (res.headers.Etag) etags[url] = res.headers.Etag;
+}
+
+export default function (data) {
+  const clientId = `c${__VU % CLIENTS}`;
+  const id = data.ids[__VU % data.ids.length];
+  poll(`${BASE}/positions/${id}`, clientId, 'getById');
+  poll(`${BASE}/clients/${clientId}/positions`, clientId, 'listByClient');
+  sleep(POLL_SECONDS);
+}
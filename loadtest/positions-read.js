@@ -0,0 +1,65 @@
+// k6 read-path load test: mixes cached reads, list reads and cache misses.
+//
+//   k6 run -e RATE=2000 -e DURATION=60s --summary-export=platform.json loadtest/positions-read.js
+//
+// Run it once against the default profile and once with --spring.profiles.active=vthreads,
+// then compare http_reqs rate and http_req_duration p(99) from the two summaries.
+import http from 'k6/http';
+import { check } from 'k6';
+import { uuidv4 } from 'https://jslib.k6.io/k6-utils/1.4.0/index.js';
+
+const BASE = __ENV.BASE_URL || 'http://localhost:8085';
+const TENANT = __ENV.TENANT || 'loadtest';
+const POSITIONS = Number(__ENV.POSITIONS || 500);
+const CLIENTS = Number(__ENV.CLIENTS || 50);
+const MISS_RATIO = Number(__ENV.MISS_RATIO || 0.05);
+
+export const options = {
+  scenarios: {
+    reads: {
+      executor: 'constant-arrival-rate',
+      rate: Number(__ENV.RATE || 2000),
+      timeUnit: '1s',
+      duration: __ENV.DURATION || '60s',
+      preAllocatedVUs: 200,
+      maxVUs: 4000,
+    },
+  },
+  summaryTrendStats: ['avg', 'p(50)', 'p(95)', 'p(99)', 'max'],
+};
+
+function headers(clientId) {
+  return { 'Content-Type': 'application/json', 'X-Tenant-Id': TENANT, 'X-Client-Id': clientId };
+}
+
+export function setup() {
+  const ids = [];
+  for (let i = 0; i < POSITIONS; i++) {
+    const clientId = `c${i % CLIENTS}`;
+    const res = http.post(`${BASE}/positions`, JSON.stringify({
+      clientId,
+      symbol: `SYM${i % 97}`,
+      quantity: 10 + i,
+      avgPrice: 100.25,
+    }), { headers: headers(clientId) });
+    if (res.status === 201) ids.push(res.json('id'));
+  }
+  return { ids };
+}
+
+export default function (data) {
+  const r = Math.random();
+  const clientId = `c${Math.floor(Math.random() * CLIENTS)}`;
+  let res;
+  if (r < MISS_RATIO) {
+    res = http.get(`${BASE}/positions/${uuidv4()}`, { headers: headers(clientId), tags: { name: 'getById-miss' } });
+    check(res, { 'miss is 404': (x) => x.status === 404 });
+  } else if (r < 0.8) {
+    const id = data.ids[Math.floor(Math.random() * data.ids.length)];
+    res = http.get(`${BASE}/positions/${id}`, { headers: headers(clientId), tags: { name: 'getById' } });
+    check(res, { 'getById is 200': (x) => x.status === 200 });
+  } else {
+    res = http.get(`${BASE}/clients/${clientId}/positions`, { headers: headers(clientId), tags: { name: 'listByClient' } });
+    check(res, { 'list is 200': (x) => x.status === 200 });
+  }
+}
@@ -0,0 +1,60 @@
+// k6 write-path load test: updates (and a few deletes + re-creates) against a fixed set of positions.
+//
+//   k6 run -e RATE=300 -e DURATION=60s --summary-export=writes.json loadtest/positions-write.js
+//
+// Run it on two builds and compare http_req_duration p(50)/p(99) per name tag, or the server-side
+// http_server_requests_seconds histogram for PUT/DELETE /positions/{id} in Prometheus.
+import http from 'k6/http';
+import { check } from 'k6';
+
+const BASE = __ENV.BASE_URL || 'http://localhost:8085';
+const TENANT = __ENV.TENANT || 'loadtest';
+const POSITIONS = Number(__ENV.POSITIONS || 2000);
+const CLIENTS = Number(__ENV.CLIENTS || 50);
+const DELETE_RATIO = Number(__ENV.DELETE_RATIO || 0.05);
+
+export const options = {
+  scenarios: {
+    writes: {
+      executor: 'constant-arrival-rate',
+      rate: Number(__ENV.RATE || 300),
+      timeUnit: '1s',
+      duration: __ENV.DURATION || '60s',
+      preAllocatedVUs: 100,
+      maxVUs: 1000,
+    },
+  },
+  summaryTrendStats: ['avg', 'p(50)', 'p(95)', 'p(99)', 'max'],
+};
+
+const headers = { 'Content-Type': 'application/json', 'X-Tenant-Id': TENANT, 'X-Client-Id': 'writer' };
+
+function create(i) {
+  const res = http.post(`${BASE}/positions`, JSON.stringify({
+    clientId: `c${i % CLIENTS}`, symbol: `SYM${i % 97}`, quantity: 10 + i, avgPrice: 100.25,
+  }), { headers, tags: { name: 'create' } });
+  return res.status === 201 ? res.json('id') : null;
+}
+
+export function setup() {
+  const ids = [];
+  for (let i = 0; i < POSITIONS; i++) {
+    const id = create(i);
+    if (id) ids.push(id);
+  }
+  return { ids };
+}
+
+export default function (data) {
+  const i = Math.floor(Math.random() * data.ids.length);
+  const id = data.ids[i];
+  if (Math.random() < DELETE_RATIO) {
+    const res = http.del(`${BASE}/positions/${id}`, null, { headers, tags: { name: 'delete' } });
+    check(res, { 'delete is 204/404': (x) => x.status === 204 || x.status === 404 });
+    return;
+  }
+  const res = http.put(`${BASE}/positions/${id}`, JSON.stringify({
+    symbol: `SYM${i % 97}`, quantity: Math.floor(Math.random() * 100000), avgPrice: 101.5,
+  }), { headers, tags: { name: 'update' } });
+  check(res, { 'update is 200/404': (x) => x.status === 200 || x.status === 404 });
+}
@@ -0,0 +1,62 @@
+package portfolio_service.kafka;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Kafka value encode/decode cost of one PositionChangedEvent: proto vs the JSON JsonSerializer used to write.
+ * Bytes per event are printed in setup; -prof gc (on by default) shows allocation per op.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PositionEventCodecBenchmark {
+
+    private PositionChangedEvent event;
+    private byte[] protoBytes;
+    private byte[] jsonBytes;
+
+    @Setup
+    public void setup() throws Exception {
+        event = new PositionChangedEvent(
+                UUID.fromString("0b6f2c1e-6a55-4c3b-9d4e-2f1a7c9e8b10"),
+                PositionEventType.POSITION_UPDATED,
+                Instant.parse("2026-01-15T10:15:30.123456Z"),
+                "t1",
+                "4bf92f3577b34da6a3ce929d0e0e4736",
+                new PositionChangedEvent.Payload(
+                        UUID.fromString("5e0c8a4d-2b7f-4f3e-8a61-93d2c4b7e5f0"),
+                        "client-000042",
+                        "MSFT",
+                        125_000,
+                        new BigDecimal("412.3350"),
+                        7L));
+        protoBytes = PositionEventCodec.toProtoBytes(event);
+        jsonBytes = PositionEventCodec.toJsonBytes(event);
+        System.out.printf("%nevent bytes: proto=%d json=%d%n", protoBytes.length, jsonBytes.length);
+    }
+
+    @Benchmark
+    public byte[] protoEncode() throws Exception {
+        return PositionEventCodec.toProtoBytes(event);
+    }
+
+    @Benchmark
+    public PositionChangedEvent protoDecode() throws Exception {
+        return PositionEventCodec.fromProtoBytes(protoBytes);
+    }
+
+    @Benchmark
+    public byte[] jsonEncode() throws Exception {
+        return PositionEventCodec.toJsonBytes(event);
+    }
+
+    @Benchmark
+    public PositionChangedEvent jsonDecode() throws Exception {
+        return PositionEventCodec.fromJsonBytes(jsonBytes);
+    }
+}
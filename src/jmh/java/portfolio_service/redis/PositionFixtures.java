@@ -0,0 +1,47 @@
+package portfolio_service.redis;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import portfolio_service.dto.PositionResponse;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+final class PositionFixtures {
+
+    private static final String[] SYMBOLS = {"MSFT", "AAPL", "GOOGL", "AMZN", "NVDA", "META", "TSLA", "BRK.B"};
+
+    private PositionFixtures() {}
+
+    // same setup as JacksonConfig, so the JSON baseline is what the service would actually produce
+    static ObjectMapper objectMapper() {
+        ObjectMapper om = new ObjectMapper().registerModule(new JavaTimeModule());
+        om.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        return om;
+    }
+
+    static List<PositionResponse> positions(int n, long seed) {
+        Random rnd = new Random(seed);
+        Instant now = Instant.parse("2026-01-15T10:15:30.123Z");
+        List<PositionResponse> out = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            out.add(PositionResponse.builder()
+                    .id(new UUID(rnd.nextLong(), rnd.nextLong()))
+                    .clientId("client-000042")
+                    .symbol(SYMBOLS[rnd.nextInt(SYMBOLS.length)])
+                    .quantity(rnd.nextInt(1_000_000))
+                    .avgPrice(BigDecimal.valueOf(rnd.nextInt(10_000_000), 4))
+                    .updatedAt(now.minusMillis(rnd.nextInt(86_400_000)))
+                    .build());
+        }
+        return out;
+    }
+
+    // PositionResponse has no creator Jackson can use, decode into a mirror record instead
+    record PositionJson(UUID id, String clientId, String symbol, long quantity, BigDecimal avgPrice, Instant updatedAt) {}
+}
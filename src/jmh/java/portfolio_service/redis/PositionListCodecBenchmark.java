@@ -0,0 +1,63 @@
+package portfolio_service.redis;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import portfolio_service.dto.PositionResponse;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encode/decode cost of a cached client list (PositionList) at 10, 100 and 10k entries, proto vs JSON.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PositionListCodecBenchmark {
+
+    @Param({"10", "100", "10000"})
+    public int size;
+
+    @Param({"v1", "v2"})
+    public String format;
+
+    private PositionProtoMapper.Format writeFormat;
+
+    private ObjectMapper json;
+    private JavaType jsonListType;
+    private List<PositionResponse> positions;
+    private byte[] protoBytes;
+    private byte[] jsonBytes;
+
+    @Setup
+    public void setup() throws Exception {
+        writeFormat = PositionProtoMapper.Format.of(format);
+        json = PositionFixtures.objectMapper();
+        jsonListType = json.getTypeFactory().constructCollectionType(List.class, PositionFixtures.PositionJson.class);
+        positions = PositionFixtures.positions(size, 7);
+        protoBytes = PositionProtoMapper.listToBytes(positions, writeFormat);
+        jsonBytes = json.writeValueAsBytes(positions);
+        System.out.printf("%nlist(%d) payload bytes: proto(%s)=%d json=%d%n", size, format, protoBytes.length, jsonBytes.length);
+    }
+
+    @Benchmark
+    public byte[] protoEncode() {
+        return PositionProtoMapper.listToBytes(positions, writeFormat);
+    }
+
+    @Benchmark
+    public List<PositionResponse> protoDecode() {
+        return PositionProtoMapper.listFromBytes(protoBytes);
+    }
+
+    @Benchmark
+    public byte[] jsonEncode() throws Exception {
+        return json.writeValueAsBytes(positions);
+    }
+
+    @Benchmark
+    public List<PositionFixtures.PositionJson> jsonDecode() throws Exception {
+        return json.readValue(jsonBytes, jsonListType);
+    }
+}
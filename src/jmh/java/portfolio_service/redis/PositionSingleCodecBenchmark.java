@@ -0,0 +1,57 @@
+package portfolio_service.redis;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import portfolio_service.dto.PositionResponse;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encode/decode cost of one cached position: proto (what Redis holds) vs JSON (the baseline).
+ * Run with -prof gc (on by default in build.gradle) to see bytes allocated per op.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PositionSingleCodecBenchmark {
+
+    @Param({"v1", "v2"})
+    public String format;
+
+    private PositionProtoMapper.Format writeFormat;
+
+    private ObjectMapper json;
+    private PositionResponse position;
+    private byte[] protoBytes;
+    private byte[] jsonBytes;
+
+    @Setup
+    public void setup() throws Exception {
+        writeFormat = PositionProtoMapper.Format.of(format);
+        json = PositionFixtures.objectMapper();
+        position = PositionFixtures.positions(1, 42).get(0);
+        protoBytes = PositionProtoMapper.toBytes(position, writeFormat);
+        jsonBytes = json.writeValueAsBytes(position);
+        System.out.printf("%nsingle payload bytes: proto(%s)=%d json=%d%n", format, protoBytes.length, jsonBytes.length);
+    }
+
+    @Benchmark
+    public byte[] protoEncode() {
+        return PositionProtoMapper.toBytes(position, writeFormat);
+    }
+
+    @Benchmark
+    public PositionResponse protoDecode() {
+        return PositionProtoMapper.fromBytes(protoBytes);
+    }
+
+    @Benchmark
+    public byte[] jsonEncode() throws Exception {
+        return json.writeValueAsBytes(position);
+    }
+
+    @Benchmark
+    public PositionFixtures.PositionJson jsonDecode() throws Exception {
+        return json.readValue(jsonBytes, PositionFixtures.PositionJson.class);
+    }
+}
@@ -0,0 +1,5 @@
+package portfolio_service.api;
+
+public class BadRequestException extends RuntimeException {
+    public BadRequestException(String message) { super(message); }
+}
@@ -1,9 +1,11 @@
 package portfolio_service.api;
 
+import jakarta.persistence.OptimisticLockException;
 import jakarta.validation.ConstraintViolationException;
 import io.sentry.Sentry;
 import org.slf4j.MDC;
 import org.springframework.dao.DataAccessException;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.FieldError;
@@ -59,6 +61,41 @@ public class GlobalExceptionHandler {
                 .build());
     }
 
+    @ExceptionHandler(BadRequestException.class)
+    public ResponseEntity<ApiError> handleBadRequest(BadRequestException ex) {
+        return ResponseEntity.badRequest().body(ApiError.builder()
+                .code("BAD_REQUEST")
+                .message(ex.getMessage())
+                .traceId(traceId())
+                .timestamp(Instant.now())
+                .details(List.of())
+                .build());
+    }
+
+    @ExceptionHandler(PreconditionFailedException.class)
+    public ResponseEntity<ApiError> handlePreconditionFailed(PreconditionFailedException ex) {
+        return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).body(ApiError.builder()
+                .code("PRECONDITION_FAILED")
+                .message(ex.getMessage())
+                .traceId(traceId())
+                .timestamp(Instant.now())
+                .details(List.of())
+                .build());
+    }
+
+    // a concurrent write bumped @Version between our read and our flush, e.g. two bulk upserts on one row;
+    // the JPA exception shows up untranslated when it comes from an explicit entityManager.flush()
+    @ExceptionHandler({OptimisticLockingFailureException.class, OptimisticLockException.class})
+    public ResponseEntity<ApiError> handleConflict(Exception ex) {
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(ApiError.builder()
+                .code("CONFLICT")
+                .message("Position was modified concurrently, retry the request.")
+                .traceId(traceId())
+                .timestamp(Instant.now())
+                .details(List.of())
+                .build());
+    }
+
     @ExceptionHandler(DataAccessException.class)
     public ResponseEntity<ApiError> handleDb(DataAccessException ex) {
         Sentry.captureException(ex);
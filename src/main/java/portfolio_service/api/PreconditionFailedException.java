@@ -0,0 +1,5 @@
+package portfolio_service.api;
+
+public class PreconditionFailedException extends RuntimeException {
+    public PreconditionFailedException(String message) { super(message); }
+}
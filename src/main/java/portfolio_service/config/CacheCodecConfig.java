@@ -0,0 +1,17 @@
+package portfolio_service.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import portfolio_service.redis.PositionCodec;
+import portfolio_service.redis.PositionProtoMapper;
+
+@Configuration
+public class CacheCodecConfig {
+
+    // v1 until every instance reads v2, then switch in a second deploy
+    @Bean
+    public PositionCodec positionCodec(@Value("${app.cache.proto-format:v1}") String protoFormat) {
+        return new PositionCodec(PositionProtoMapper.Format.of(protoFormat));
+    }
+}
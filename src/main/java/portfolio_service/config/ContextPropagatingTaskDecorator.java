@@ -0,0 +1,32 @@
+package portfolio_service.config;
+
+import org.slf4j.MDC;
+import org.springframework.core.task.TaskDecorator;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Carries TenantContext and the MDC (traceId/tenantId) into work handed off to Spring's task executor,
+ * e.g. MVC async/streaming responses. Both are thread-locals, and with virtual threads
+ * every hand-off is a brand new thread, so nothing is inherited by accident.
+ */
+@Component
+public class ContextPropagatingTaskDecorator implements TaskDecorator {
+
+    @Override
+    public Runnable decorate(Runnable runnable) {
+        String tenant = TenantContext.get();
+        Map<String, String> mdc = MDC.getCopyOfContextMap();
+        return () -> {
+            TenantContext.set(tenant);
+            if (mdc != null) MDC.setContextMap(mdc);
+            try {
+                runnable.run();
+            } finally {
+                MDC.clear();
+                TenantContext.clear();
+            }
+        };
+    }
+}
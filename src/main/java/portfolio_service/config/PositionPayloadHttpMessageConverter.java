@@ -0,0 +1,98 @@
+package portfolio_service.config;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.stereotype.Component;
+import portfolio_service.dto.PositionPayload;
+import portfolio_service.dto.PositionResponse;
+import portfolio_service.redis.PositionJsonWriter;
+import portfolio_service.redis.PositionProtoMapper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Content negotiation for position reads.
+ * <ul>
+ *   <li>application/x-protobuf: always portfolio.Position / portfolio.PositionList from position.proto (v1),
+ *       whatever app.cache.proto-format stores. v1 cache bytes are written as-is, v2 ones are transcoded.
+ *       X-Protobuf-Message names the message.</li>
+ *   <li>application/json: cached bytes are streamed proto -> JSON without building PositionResponse objects.</li>
+ * </ul>
+ */
+@Component
+public class PositionPayloadHttpMessageConverter extends AbstractHttpMessageConverter<PositionPayload> {
+
+    public static final MediaType PROTOBUF = MediaType.parseMediaType("application/x-protobuf");
+
+    private final ObjectMapper objectMapper;
+
+    public PositionPayloadHttpMessageConverter(ObjectMapper objectMapper) {
+        super(MediaType.APPLICATION_JSON, PROTOBUF);
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return PositionPayload.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    protected boolean canRead(MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected PositionPayload readInternal(Class<? extends PositionPayload> clazz, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("PositionPayload is write-only", inputMessage);
+    }
+
+    @Override
+    protected void writeInternal(PositionPayload payload, HttpOutputMessage out) throws IOException {
+        MediaType contentType = out.getHeaders().getContentType();
+        if (contentType != null && PROTOBUF.isCompatibleWith(contentType)) {
+            writeProto(payload, out);
+            return;
+        }
+
+        JsonGenerator g = objectMapper.getFactory().createGenerator(out.getBody(), JsonEncoding.UTF8);
+        if (payload.encoded() == null) {
+            objectMapper.writeValue(g, payload.decoded());
+        } else if (payload.list()) {
+            PositionJsonWriter.writeList(payload.encoded(), g);
+        } else {
+            PositionJsonWriter.writePosition(payload.encoded(), g);
+        }
+        g.flush();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void writeProto(PositionPayload payload, HttpOutputMessage out) throws IOException {
+        byte[] bytes = payload.encoded();
+        if (bytes == null) {
+            bytes = payload.list()
+                    ? PositionProtoMapper.listToBytes((List<PositionResponse>) payload.decoded(), PositionProtoMapper.Format.V1)
+                    : PositionProtoMapper.toBytes((PositionResponse) payload.decoded(), PositionProtoMapper.Format.V1);
+        } else if (PositionProtoMapper.isV2(bytes)) {
+            // the cache format is an internal choice; clients keep getting v1
+            bytes = payload.list()
+                    ? PositionProtoMapper.listToBytes(PositionProtoMapper.listFromBytes(bytes), PositionProtoMapper.Format.V1)
+                    : PositionProtoMapper.toBytes(PositionProtoMapper.fromBytes(bytes), PositionProtoMapper.Format.V1);
+        }
+
+        out.getHeaders().set("X-Protobuf-Schema", "position.proto");
+        out.getHeaders().set("X-Protobuf-Message", payload.list() ? "portfolio.PositionList" : "portfolio.Position");
+        out.getHeaders().setContentLength(bytes.length);
+
+        OutputStream body = out.getBody();
+        body.write(bytes);
+        body.flush();
+    }
+}
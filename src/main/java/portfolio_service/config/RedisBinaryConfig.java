@@ -1,14 +1,35 @@
 package portfolio_service.config;
 
+import io.lettuce.core.ClientOptions;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisURI;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.codec.ByteArrayCodec;
+import io.lettuce.core.codec.RedisCodec;
+import io.lettuce.core.codec.StringCodec;
+import io.lettuce.core.protocol.ProtocolVersion;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.util.unit.DataSize;
+import portfolio_service.redis.RedisTrackingCache;
+
+import java.time.Duration;
 
 @Configuration
 public class RedisBinaryConfig {
 
+    private static final Logger log = LoggerFactory.getLogger(RedisBinaryConfig.class);
+
     @Bean
     public RedisTemplate<String, byte[]> redisBytesTemplate(RedisConnectionFactory cf) {
         RedisTemplate<String, byte[]> t = new RedisTemplate<>();
@@ -23,4 +44,65 @@ public class RedisBinaryConfig {
         t.afterPropertiesSet();
         return t;
     }
+
+    /**
+     * Local copies of cache values kept valid by Redis (RESP3 client tracking), see {@link RedisTrackingCache}.
+     * Off by default, and whenever the server can't do it: RedisBytesCache then reads everything remotely.
+     */
+    @Bean(destroyMethod = "close")
+    public RedisTrackingCache redisTrackingCache(RedisConnectionFactory cf,
+                                                 MeterRegistry registry,
+                                                 @Value("${app.cache.tracking.enabled:false}") boolean enabled,
+                                                 @Value("${app.cache.tracking.max-size:64MB}") DataSize maxSize,
+                                                 @Value("${app.cache.tracking.local-ttl:30s}") Duration localTtl,
+                                                 @Value("${app.cache.tracking.max-prefixes:100}") int maxPrefixes) {
+        if (!enabled) return RedisTrackingCache.disabled();
+        if (!(cf instanceof LettuceConnectionFactory lettuce)) {
+            log.warn("Redis client tracking needs Lettuce, reading remotely.");
+            return RedisTrackingCache.disabled();
+        }
+        // the tracking connection is a plain standalone one; it would not follow a failover or a cluster's slots
+        if (lettuce.getSentinelConfiguration() != null || lettuce.getClusterConfiguration() != null
+                || lettuce.getSocketConfiguration() != null) {
+            log.warn("Redis client tracking only supports a standalone host, reading remotely.");
+            return RedisTrackingCache.disabled();
+        }
+
+        // a client of its own: RESP3 is required for pushes, and its connection events are ours alone.
+        // Starts from the factory's options so SSL settings (trust store, protocols) carry over
+        LettuceClientConfiguration clientConfig = lettuce.getClientConfiguration();
+        RedisClient client = RedisClient.create(redisUri(lettuce, clientConfig));
+        client.setOptions(clientConfig.getClientOptions().map(ClientOptions::mutate).orElseGet(ClientOptions::builder)
+                .protocolVersion(ProtocolVersion.RESP3)
+                .build());
+        try {
+            StatefulRedisConnection<String, byte[]> connection =
+                    client.connect(RedisCodec.of(StringCodec.UTF8, ByteArrayCodec.INSTANCE));
+            log.info("Redis client tracking enabled, local copies up to {}", maxSize);
+            return new RedisTrackingCache(client, connection, maxSize.toBytes(), localTtl, maxPrefixes, registry);
+        } catch (Exception e) {
+            log.warn("Redis client tracking unavailable (needs RESP3, Redis 6+), reading remotely. reason={}", e.getMessage());
+            client.shutdown();
+            return RedisTrackingCache.disabled();
+        }
+    }
+
+    private static RedisURI redisUri(LettuceConnectionFactory lettuce, LettuceClientConfiguration clientConfig) {
+        RedisStandaloneConfiguration c = lettuce.getStandaloneConfiguration();
+        RedisURI.Builder uri = RedisURI.builder()
+                .withHost(c.getHostName())
+                .withPort(c.getPort())
+                .withDatabase(c.getDatabase())
+                .withTimeout(Duration.ofMillis(lettuce.getTimeout()));
+        if (clientConfig.isUseSsl()) {
+            uri.withSsl(true)
+                    .withVerifyPeer(clientConfig.getVerifyMode())
+                    .withStartTls(clientConfig.isStartTls());
+        }
+        c.getPassword().toOptional().ifPresent(password -> {
+            if (c.getUsername() != null) uri.withAuthentication(c.getUsername(), new String(password));
+            else uri.withPassword(password);
+        });
+        return uri.build();
+    }
 }
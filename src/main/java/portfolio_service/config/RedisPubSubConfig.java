@@ -0,0 +1,30 @@
+package portfolio_service.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import portfolio_service.redis.CacheFillNotifier;
+import portfolio_service.redis.NearCache;
+import portfolio_service.redis.RedisKeys;
+import portfolio_service.service.PositionIdFilter;
+
+@Configuration
+public class RedisPubSubConfig {
+
+    private static final String ENV = "prod";
+
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory cf,
+                                                                       NearCache nearCache,
+                                                                       CacheFillNotifier fillNotifier,
+                                                                       PositionIdFilter idFilter) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(cf);
+        container.addMessageListener(nearCache, new ChannelTopic(RedisKeys.nearCacheInvalidationChannel(ENV)));
+        container.addMessageListener(fillNotifier, new ChannelTopic(RedisKeys.cacheFilledChannel(ENV)));
+        container.addMessageListener(idFilter, new ChannelTopic(RedisKeys.positionIdsCreatedChannel(ENV)));
+        return container;
+    }
+}
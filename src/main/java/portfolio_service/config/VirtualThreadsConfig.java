@@ -0,0 +1,26 @@
+package portfolio_service.config;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+@Configuration
+@Profile("vthreads")
+public class VirtualThreadsConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(VirtualThreadsConfig.class);
+
+    // spring.threads.virtual.enabled is silently ignored below 21, make that visible
+    @PostConstruct
+    public void checkRuntime() {
+        int feature = Runtime.version().feature();
+        if (feature < 21) {
+            log.warn("Profile 'vthreads' is active but the runtime is Java {}; virtual threads need Java 21+, " +
+                    "requests will run on the platform thread pool.", feature);
+        } else {
+            log.info("Virtual threads enabled for request handling (Java {}).", feature);
+        }
+    }
+}
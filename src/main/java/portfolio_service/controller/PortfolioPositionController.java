@@ -1,47 +1,189 @@
 package portfolio_service.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import portfolio_service.api.PreconditionFailedException;
+import portfolio_service.config.TenantFilter;
+import portfolio_service.dto.BatchGetPositionsRequest;
+import portfolio_service.dto.BatchGetPositionsResponse;
+import portfolio_service.dto.BulkUpsertPositionsRequest;
+import portfolio_service.dto.BulkUpsertPositionsResponse;
+import portfolio_service.dto.ClientPortfolioResponse;
 import portfolio_service.dto.CreatePositionRequest;
+import portfolio_service.dto.PositionPageResponse;
+import portfolio_service.dto.PositionPayload;
 import portfolio_service.dto.PositionResponse;
 import portfolio_service.dto.UpdatePositionRequest;
+import portfolio_service.redis.CacheTtl;
 import portfolio_service.service.PortfolioPositionService;
 
-import java.util.List;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.LinkedHashSet;
+import java.util.Set;
 import java.util.UUID;
 
 @RestController
 @RequiredArgsConstructor
 public class PortfolioPositionController {
 
+    private static final int NDJSON_FLUSH_EVERY = 200;
+
     private final PortfolioPositionService service;
+    private final ObjectMapper objectMapper;
 
     @PostMapping("/positions")
-    @ResponseStatus(HttpStatus.CREATED)
-    public PositionResponse create(@Valid @RequestBody CreatePositionRequest req) {
-        return service.create(req);
+    public ResponseEntity<PositionResponse> create(@Valid @RequestBody CreatePositionRequest req) {
+        PositionResponse p = service.create(req);
+        return ResponseEntity.status(HttpStatus.CREATED).eTag(etag(p.getVersion())).body(p);
     }
 
+    // application/json or application/x-protobuf, see PositionPayloadHttpMessageConverter
     @GetMapping("/positions/{id}")
-    public PositionResponse getById(@PathVariable UUID id) {
-        return service.getById(id);
+    public ResponseEntity<PositionPayload> getById(@PathVariable UUID id,
+                                                   @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        Duration maxAge = CacheTtl.positionHttpMaxAge();
+        if (ifNoneMatch != null) {
+            String current = service.currentPositionEtag(id);
+            if (current != null && noneMatchHit(ifNoneMatch, current)) return notModified(current, maxAge);
+        }
+        return cacheable(service.getByIdPayload(id), maxAge);
+    }
+
+    @PostMapping("/positions:batchGet")
+    public BatchGetPositionsResponse batchGet(@Valid @RequestBody BatchGetPositionsRequest req) {
+        return service.batchGet(req.getIds());
+    }
+
+    @PostMapping("/positions:bulkUpsert")
+    public BulkUpsertPositionsResponse bulkUpsert(@Valid @RequestBody BulkUpsertPositionsRequest req) {
+        return service.bulkUpsert(req.getItems());
     }
 
     @GetMapping("/clients/{clientId}/positions")
-    public List<PositionResponse> listByClient(@PathVariable String clientId) {
-        return service.listByClient(clientId);
+    public ResponseEntity<PositionPayload> listByClient(@PathVariable String clientId,
+                                                        @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        Duration maxAge = CacheTtl.clientListHttpMaxAge();
+        if (ifNoneMatch != null) {
+            String current = service.currentListEtag(clientId);
+            if (current != null && noneMatchHit(ifNoneMatch, current)) return notModified(current, maxAge);
+        }
+        return cacheable(service.listByClientPayload(clientId), maxAge);
+    }
+
+    // keyset pages ordered by (symbol, id); follow nextCursor until it is null
+    @GetMapping(value = "/clients/{clientId}/positions", params = "limit")
+    public PositionPageResponse listByClientPage(@PathVariable String clientId,
+                                                 @RequestParam int limit,
+                                                 @RequestParam(required = false) String cursor) {
+        return service.listByClientPage(clientId, limit, cursor);
+    }
+
+    // whole book, one JSON object per line, written while rows are still being fetched
+    @GetMapping(value = "/clients/{clientId}/positions", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamByClient(@PathVariable String clientId) {
+        StreamingResponseBody body = out -> {
+            int[] n = {0};
+            try {
+                service.forEachByClient(clientId, p -> {
+                    try {
+                        out.write(objectMapper.writeValueAsBytes(p));
+                        out.write('\n');
+                        if (++n[0] % NDJSON_FLUSH_EVERY == 0) out.flush();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            out.flush();
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
+    @GetMapping("/clients/{clientId}/portfolio")
+    public ClientPortfolioResponse portfolio(@PathVariable String clientId) {
+        return service.getClientPortfolio(clientId);
     }
 
     @PutMapping("/positions/{id}")
-    public PositionResponse update(@PathVariable UUID id, @Valid @RequestBody UpdatePositionRequest req) {
-        return service.update(id, req);
+    public ResponseEntity<PositionResponse> update(@PathVariable UUID id,
+                                                   @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                                   @Valid @RequestBody UpdatePositionRequest req) {
+        PositionResponse p = service.update(id, expectedVersions(ifMatch), req);
+        return ResponseEntity.ok().eTag(etag(p.getVersion())).body(p);
     }
 
     @DeleteMapping("/positions/{id}")
     @ResponseStatus(HttpStatus.NO_CONTENT)
-    public void delete(@PathVariable UUID id) {
-        service.delete(id);
+    public void delete(@PathVariable UUID id,
+                       @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        service.delete(id, expectedVersions(ifMatch));
+    }
+
+    private static String etag(long version) {
+        return etag(Long.toString(version));
+    }
+
+    private static String etag(String tag) {
+        return "\"" + tag + "\"";
+    }
+
+    // shared caches key on the URL, so the tenant header and the negotiated format have to be part of it
+    private static ResponseEntity<PositionPayload> cacheable(PositionPayload p, Duration maxAge) {
+        ResponseEntity.BodyBuilder ok = ResponseEntity.ok()
+                .cacheControl(CacheControl.maxAge(maxAge).cachePublic())
+                .varyBy(HttpHeaders.ACCEPT, TenantFilter.TENANT_HEADER);
+        if (p.etag() != null) ok.eTag(etag(p.etag()));
+        return ok.body(p);
+    }
+
+    private static ResponseEntity<PositionPayload> notModified(String tag, Duration maxAge) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                .eTag(etag(tag))
+                .cacheControl(CacheControl.maxAge(maxAge).cachePublic())
+                .varyBy(HttpHeaders.ACCEPT, TenantFilter.TENANT_HEADER)
+                .build();
+    }
+
+    // If-None-Match uses weak comparison, so W/"3" matches "3"
+    private static boolean noneMatchHit(String ifNoneMatch, String tag) {
+        String quoted = etag(tag);
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) candidate = candidate.substring(2);
+            if (candidate.equals("*") || candidate.equals(quoted)) return true;
+        }
+        return false;
+    }
+
+    // If-Match uses strong comparison, so a weak tag (W/"3") can never match; "*" means any version.
+    // null = no precondition; otherwise the versions the request may change, and 412 if it names none
+    private static Set<Long> expectedVersions(String ifMatch) {
+        if (ifMatch == null || ifMatch.isBlank()) return null;
+        Set<Long> versions = new LinkedHashSet<>();
+        for (String tag : ifMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.equals("*")) return null;
+            if (tag.length() > 2 && tag.startsWith("\"") && tag.endsWith("\"")) {
+                try {
+                    versions.add(Long.parseLong(tag.substring(1, tag.length() - 1)));
+                } catch (NumberFormatException ignore) {}
+            }
+        }
+        if (versions.isEmpty()) {
+            throw new PreconditionFailedException("If-Match does not name a current version: " + ifMatch);
+        }
+        return versions;
     }
 }
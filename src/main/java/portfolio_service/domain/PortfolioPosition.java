@@ -36,6 +36,11 @@ public class PortfolioPosition {
     @Column(nullable = false)
     private Instant updatedAt;
 
+    // default lets ddl-auto add the column to a table that already has rows
+    @Version
+    @Column(nullable = false, columnDefinition = "bigint default 0")
+    private long version;
+
     public PortfolioPosition() {}
 
     public PortfolioPosition(UUID id, String clientId, String symbol, long quantity, BigDecimal avgPrice, Instant updatedAt) {
@@ -0,0 +1,53 @@
+package portfolio_service.domain;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Outbox rows that failed app.kafka.outbox.max-attempts times. OutboxRelay moves them here so the events
+ * queued behind them for the same key can go out; they stay until someone resends or deletes them by hand.
+ */
+@Entity
+@Setter
+@Getter
+@Table(name = "position_outbox_dead")
+public class PositionOutboxDeadEvent {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // id the row had in position_outbox, i.e. its place in the key's order
+    @Column(nullable = false)
+    private Long outboxId;
+
+    @Column(nullable = false, updatable = false)
+    private UUID eventId;
+
+    @Column(nullable = false, length = 64)
+    private String messageKey;
+
+    @Column(nullable = false, length = 64)
+    private String tenantId;
+
+    @Column(length = 64)
+    private String traceId;
+
+    @Column(nullable = false, columnDefinition = "nvarchar(max)")
+    private String payload;
+
+    @Column(nullable = false)
+    private Instant createdAt;
+
+    @Column(nullable = false)
+    private Instant deadAt;
+
+    @Column(nullable = false)
+    private int attempts;
+
+    public PositionOutboxDeadEvent() {}
+}
@@ -0,0 +1,60 @@
+package portfolio_service.domain;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Position events waiting to be sent to Kafka. Written in the same transaction as the position change,
+ * deleted by OutboxRelay once Kafka has acked them.
+ */
+@Entity
+@Setter
+@Getter
+// OutboxRelay looks up the oldest row per key on every claim
+@Table(name = "position_outbox", indexes = @Index(name = "ix_position_outbox_key", columnList = "message_key, id"))
+public class PositionOutboxEvent {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, updatable = false)
+    private UUID eventId;
+
+    // Kafka record key
+    @Column(nullable = false, length = 64)
+    private String messageKey;
+
+    @Column(nullable = false, length = 64)
+    private String tenantId;
+
+    @Column(length = 64)
+    private String traceId;
+
+    @Column(nullable = false, columnDefinition = "nvarchar(max)")
+    private String payload;
+
+    @Column(nullable = false)
+    private Instant createdAt;
+
+    // set while a relay instance owns the row; rows whose lease ran out are picked up again
+    private Instant claimedUntil;
+
+    @Column(nullable = false)
+    private int attempts;
+
+    public PositionOutboxEvent() {}
+
+    public PositionOutboxEvent(UUID eventId, String messageKey, String tenantId, String traceId, String payload, Instant createdAt) {
+        this.eventId = eventId;
+        this.messageKey = messageKey;
+        this.tenantId = tenantId;
+        this.traceId = traceId;
+        this.payload = payload;
+        this.createdAt = createdAt;
+    }
+}
@@ -0,0 +1,15 @@
+package portfolio_service.dto;
+
+import jakarta.validation.constraints.*;
+import lombok.Data;
+
+import java.util.List;
+import java.util.UUID;
+
+@Data
+public class BatchGetPositionsRequest {
+
+    @NotEmpty
+    @Size(max = 500)
+    private List<@NotNull UUID> ids;
+}
@@ -0,0 +1,25 @@
+package portfolio_service.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+
+import java.util.List;
+import java.util.UUID;
+
+@Getter
+@Builder
+@AllArgsConstructor
+public class BatchGetPositionsResponse {
+
+    // same order as the requested ids, found=false marks an unknown id
+    private List<Item> items;
+
+    @Getter
+    @AllArgsConstructor
+    public static class Item {
+        private UUID id;
+        private boolean found;
+        private PositionResponse position;
+    }
+}
@@ -0,0 +1,16 @@
+package portfolio_service.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.*;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class BulkUpsertPositionsRequest {
+
+    // matched on (clientId, symbol): an existing position is updated, otherwise one is created
+    @NotEmpty
+    @Size(max = 50_000)
+    private List<@Valid @NotNull CreatePositionRequest> items;
+}
@@ -0,0 +1,17 @@
+package portfolio_service.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+
+@Getter
+@Builder
+@AllArgsConstructor
+public class BulkUpsertPositionsResponse {
+    private int created;
+    private int updated;
+    // each chunk is its own transaction; a failure leaves earlier chunks committed
+    private int chunks;
+    private long elapsedMs;
+    private long rowsPerSecond;
+}
@@ -0,0 +1,18 @@
+package portfolio_service.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+
+import java.math.BigDecimal;
+
+@Getter
+@Builder
+@AllArgsConstructor
+public class ClientPortfolioResponse {
+    private String clientId;
+    private long positionCount;
+    private long totalQuantity;
+    // sum of quantity * avgPrice
+    private BigDecimal costBasis;
+}
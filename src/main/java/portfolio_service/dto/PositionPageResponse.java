@@ -0,0 +1,16 @@
+package portfolio_service.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+
+import java.util.List;
+
+@Getter
+@Builder
+@AllArgsConstructor
+public class PositionPageResponse {
+    private List<PositionResponse> items;
+    // pass back as ?cursor= for the next page; null when this page was not full
+    private String nextCursor;
+}
@@ -0,0 +1,27 @@
+package portfolio_service.dto;
+
+import java.util.List;
+
+/**
+ * Read result that is either already decoded (near cache / DB) or still the raw cached proto bytes.
+ * Written by PositionPayloadHttpMessageConverter, so raw bytes go out without being decoded first.
+ * etag is the unquoted entity tag for the response, or null if there is none.
+ */
+public record PositionPayload(Object decoded, byte[] encoded, boolean list, String etag) {
+
+    public static PositionPayload of(PositionResponse position) {
+        return new PositionPayload(position, null, false, null);
+    }
+
+    public static PositionPayload of(List<PositionResponse> positions) {
+        return new PositionPayload(positions, null, true, null);
+    }
+
+    public static PositionPayload encoded(byte[] bytes, boolean list) {
+        return new PositionPayload(null, bytes, list, null);
+    }
+
+    public PositionPayload withEtag(String etag) {
+        return new PositionPayload(decoded, encoded, list, etag);
+    }
+}
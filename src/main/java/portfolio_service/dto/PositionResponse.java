@@ -18,5 +18,7 @@ public class PositionResponse {
     private long quantity;
     private BigDecimal avgPrice;
     private Instant updatedAt;
+    // optimistic-lock version, also the ETag
+    private long version;
 }
 
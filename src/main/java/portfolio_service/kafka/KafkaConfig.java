@@ -17,6 +17,7 @@ import org.springframework.kafka.listener.DefaultErrorHandler;
 import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
 import org.springframework.kafka.config.KafkaListenerContainerFactory;
 import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.listener.ContainerProperties;
 import org.springframework.kafka.support.ExponentialBackOffWithMaxRetries;
 
 @Configuration
@@ -28,10 +29,16 @@ public class KafkaConfig {
     @Value("${app.kafka.topic:portfolio.position.events}")
     private String positionTopic;
 
+    @Value("${app.kafka.partitions:3}")
+    private int partitions;
+
+    @Value("${app.kafka.consumer.concurrency:3}")
+    private int concurrency;
+
     @Bean
     public NewTopic positionTopic() {
         return TopicBuilder.name(positionTopic)
-                .partitions(3)
+                .partitions(partitions)
                 .replicas(1)
                 .build();
     }
@@ -39,7 +46,7 @@ public class KafkaConfig {
     @Bean
     public NewTopic positionDeadLetterTopic() {
         return TopicBuilder.name(positionTopic + ".DLT")
-                .partitions(3)
+                .partitions(partitions)
                 .replicas(1)
                 .build();
     }
@@ -72,7 +79,11 @@ public class KafkaConfig {
                 new ConcurrentKafkaListenerContainerFactory<>();
         factory.setConsumerFactory(consumerFactory);
         factory.setCommonErrorHandler(errorHandler);
-        factory.setConcurrency(3);
+        // one container thread per partition at most; KeyOrderedBatchProcessor adds parallelism inside a poll
+        factory.setConcurrency(Math.min(concurrency, partitions));
+        // PositionEventConsumer takes the whole poll and the offsets are committed once per batch
+        factory.setBatchListener(true);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.BATCH);
         return factory;
     }
 }
@@ -0,0 +1,107 @@
+package portfolio_service.kafka;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Runs one poll's records on several threads while keeping order per key, so the listener isn't
+ * limited to one thread per partition. Records are split into shards by key hash; each shard is handled
+ * by one thread in the order the records arrived. process() returns only when every shard is done,
+ * so the container commits the batch offsets after all of it has been handled, whatever order the
+ * shards finished in. If shards fail, the earliest record of the earliest failed shard is reported,
+ * so the commit never moves past unprocessed work (records after it may be handled twice).
+ */
+@Component
+public class KeyOrderedBatchProcessor {
+
+    private final int parallelism;
+    private final ExecutorService pool;
+
+    public KeyOrderedBatchProcessor(@Value("${app.kafka.consumer.parallelism:0}") int parallelism) {
+        this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        AtomicInteger n = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(this.parallelism, r -> {
+            Thread t = new Thread(r, "kafka-key-ordered-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * @throws ShardFailedException with the first record that may not have been processed
+     */
+    public <T> void process(List<T> records, Function<T, String> keyOf, Consumer<List<T>> work) {
+        int shards = Math.min(parallelism, records.size());
+        if (shards <= 1) {
+            runInline(records, work);
+            return;
+        }
+
+        List<List<T>> buckets = new ArrayList<>(shards);
+        for (int i = 0; i < shards; i++) buckets.add(new ArrayList<>());
+        for (T record : records) {
+            buckets.get(Math.floorMod(keyOf.apply(record).hashCode(), shards)).add(record);
+        }
+
+        List<List<T>> used = new ArrayList<>(shards);
+        List<CompletableFuture<Void>> futures = new ArrayList<>(shards);
+        for (List<T> bucket : buckets) {
+            if (bucket.isEmpty()) continue;
+            used.add(bucket);
+            futures.add(CompletableFuture.runAsync(() -> work.accept(bucket), pool));
+        }
+
+        int firstFailed = -1;
+        Throwable cause = null;
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                futures.get(i).join();
+            } catch (CompletionException e) {
+                int index = records.indexOf(used.get(i).get(0));
+                if (firstFailed < 0 || index < firstFailed) {
+                    firstFailed = index;
+                    cause = e.getCause();
+                }
+            }
+        }
+        if (firstFailed >= 0) throw new ShardFailedException(records.get(firstFailed), cause);
+    }
+
+    private static <T> void runInline(List<T> records, Consumer<List<T>> work) {
+        if (records.isEmpty()) return;
+        try {
+            work.accept(records);
+        } catch (RuntimeException e) {
+            throw new ShardFailedException(records.get(0), e);
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        pool.shutdown();
+    }
+
+    public static class ShardFailedException extends RuntimeException {
+        private final transient Object firstUnprocessed;
+
+        ShardFailedException(Object firstUnprocessed, Throwable cause) {
+            super("Key-ordered shard failed", cause);
+            this.firstUnprocessed = firstUnprocessed;
+        }
+
+        public Object getFirstUnprocessed() {
+            return firstUnprocessed;
+        }
+    }
+}
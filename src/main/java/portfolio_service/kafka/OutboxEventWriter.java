@@ -0,0 +1,79 @@
+package portfolio_service.kafka;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+import portfolio_service.domain.PositionOutboxEvent;
+import portfolio_service.repository.PositionOutboxRepository;
+
+import java.sql.Types;
+import java.time.ZoneOffset;
+
+/**
+ * Outbox mode: stores the event in the caller's transaction, so it commits or rolls back
+ * together with the position change. OutboxRelay sends it to Kafka afterwards.
+ */
+@Component
+@ConditionalOnProperty(name = "app.kafka.outbox.enabled", havingValue = "true", matchIfMissing = true)
+public class OutboxEventWriter {
+
+    // plain JDBC batch: Hibernate can't batch inserts into a table with an IDENTITY key
+    private static final String INSERT_SQL = """
+            INSERT INTO position_outbox (event_id, message_key, tenant_id, trace_id, payload, created_at, attempts)
+            VALUES (:eventId, :messageKey, :tenantId, :traceId, :payload, :createdAt, 0)
+            """;
+
+    private final PositionOutboxRepository outbox;
+    private final NamedParameterJdbcTemplate jdbc;
+    private final ObjectMapper objectMapper;
+    private final PartitionKey partitionKey;
+
+    public OutboxEventWriter(PositionOutboxRepository outbox,
+                             NamedParameterJdbcTemplate jdbc,
+                             ObjectMapper objectMapper,
+                             @Value("${app.kafka.partition-key:positionId}") String partitionKey) {
+        this.outbox = outbox;
+        this.jdbc = jdbc;
+        this.objectMapper = objectMapper;
+        this.partitionKey = PartitionKey.from(partitionKey);
+    }
+
+    @EventListener
+    public void write(PositionChangedEvent event) {
+        outbox.save(new PositionOutboxEvent(
+                event.eventId(),
+                partitionKey.of(event),
+                event.tenantId(),
+                event.traceId(),
+                toJson(event),
+                event.occurredAt()));
+    }
+
+    @EventListener
+    public void writeAll(PositionChangedEvents batch) {
+        if (batch.events().isEmpty()) return;
+        MapSqlParameterSource[] rows = batch.events().stream()
+                .map(e -> new MapSqlParameterSource()
+                        .addValue("eventId", e.eventId().toString())
+                        .addValue("messageKey", partitionKey.of(e))
+                        .addValue("tenantId", e.tenantId())
+                        .addValue("traceId", e.traceId(), Types.NVARCHAR)
+                        .addValue("payload", toJson(e))
+                        .addValue("createdAt", e.occurredAt().atOffset(ZoneOffset.UTC)))
+                .toArray(MapSqlParameterSource[]::new);
+        jdbc.batchUpdate(INSERT_SQL, rows);
+    }
+
+    private String toJson(PositionChangedEvent event) {
+        try {
+            return objectMapper.writeValueAsString(event);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize position event " + event.eventId(), e);
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package portfolio_service.kafka;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drains position_outbox to Kafka in batches.
+ * <p>
+ * Several instances can relay at once. A claimed row carries a lease (claimed_until); it is deleted once
+ * Kafka acks it, and if the instance dies or the send fails the lease runs out and another poll sends it
+ * again. Delivery is at-least-once: consumers dedupe on eventId if they care.
+ * <p>
+ * A claim takes each key's leading rows in id order, up to the first one that is leased elsewhere or out of
+ * attempts, and they are sent in that order on the same producer, so they reach the key's partition in order.
+ * A key's later rows therefore wait while an earlier one is in flight or waiting out a failed lease. Claims
+ * run one at a time across instances (an applock, held for the claim statement only), because a claimer
+ * that skipped locked rows could take a key's later row without the earlier one. A row that fails
+ * max-attempts times is moved to position_outbox_dead (portfolio_outbox_dead_total) once its last lease
+ * runs out, which lets the rest of its key go on.
+ */
+@Component
+@ConditionalOnProperty(name = "app.kafka.outbox.enabled", havingValue = "true", matchIfMissing = true)
+public class OutboxRelay {
+
+    private static final Logger log = LoggerFactory.getLogger(OutboxRelay.class);
+
+    // keeps one scheduled run from hogging the scheduler thread when the backlog is large
+    private static final int MAX_BATCHES_PER_RUN = 20;
+
+    // fails the claim transaction if another instance holds the claim for more than 5s
+    private static final String CLAIM_LOCK_SQL = """
+            DECLARE @granted int;
+            EXEC @granted = sp_getapplock @Resource = 'position_outbox_claim', @LockMode = 'Exclusive',
+                                          @LockOwner = 'Transaction', @LockTimeout = 5000;
+            IF @granted < 0 THROW 51000, 'position_outbox claim lock not granted', 1;
+            """;
+
+    // No READPAST: a row still being inserted is waited for, not skipped, so a claimed row never has an
+    // unclaimed earlier row of its key. ORDER BY id keeps that true at the TOP cut as well.
+    private static final String CLAIM_SQL = """
+            WITH batch AS (
+                SELECT TOP (:batchSize) o.id, o.message_key, o.payload, o.claimed_until, o.attempts
+                FROM position_outbox o WITH (UPDLOCK, ROWLOCK)
+                WHERE (o.claimed_until IS NULL OR o.claimed_until < SYSDATETIMEOFFSET())
+                  AND o.attempts < :maxAttempts
+                  AND NOT EXISTS (
+                      SELECT 1 FROM position_outbox e
+                      WHERE e.message_key = o.message_key AND e.id < o.id
+                        AND (e.claimed_until >= SYSDATETIMEOFFSET() OR e.attempts >= :maxAttempts))
+                ORDER BY o.id
+            )
+            UPDATE batch
+            SET claimed_until = DATEADD(millisecond, :leaseMs, SYSDATETIMEOFFSET()),
+                attempts = attempts + 1
+            OUTPUT inserted.id, inserted.message_key, inserted.payload
+            """;
+
+    private static final String DELETE_SQL = "DELETE FROM position_outbox WHERE id IN (:ids)";
+
+    // rows that were claimed but not sent, because an earlier row of their key failed first
+    private static final String RELEASE_SQL = """
+            UPDATE position_outbox SET claimed_until = NULL, attempts = attempts - 1 WHERE id IN (:ids)
+            """;
+
+    // only after the last lease ran out, so a send still in flight isn't moved under the relay that owns it
+    private static final String DEAD_LETTER_SQL = """
+            DELETE FROM position_outbox WITH (READPAST)
+            OUTPUT deleted.id, deleted.event_id, deleted.message_key, deleted.tenant_id, deleted.trace_id,
+                   deleted.payload, deleted.created_at, SYSDATETIMEOFFSET(), deleted.attempts
+            INTO position_outbox_dead (outbox_id, event_id, message_key, tenant_id, trace_id,
+                                       payload, created_at, dead_at, attempts)
+            WHERE attempts >= :maxAttempts AND claimed_until < SYSDATETIMEOFFSET()
+            """;
+
+    private static final String OLDEST_SQL = """
+            SELECT TOP 1 created_at FROM position_outbox WITH (READPAST)
+            WHERE attempts < :maxAttempts
+            ORDER BY id
+            """;
+
+    @Value("${app.kafka.topic:portfolio.position.events}")
+    private String topic;
+
+    @Value("${app.kafka.outbox.batch-size:500}")
+    private int batchSize;
+
+    @Value("${app.kafka.outbox.lease:30s}")
+    private Duration lease;
+
+    @Value("${app.kafka.outbox.send-timeout:10s}")
+    private Duration sendTimeout;
+
+    @Value("${app.kafka.outbox.max-attempts:10}")
+    private int maxAttempts;
+
+    private final NamedParameterJdbcTemplate jdbc;
+    private final TransactionTemplate claimTx;
+    private final KafkaTemplate<String, Object> kafkaTemplate;
+    private final ObjectMapper objectMapper;
+
+    private final AtomicLong lagMillis = new AtomicLong();
+    private final Counter published;
+    private final Counter failed;
+    private final Counter dead;
+    private final DistributionSummary batchSizes;
+    private final Timer batchTimer;
+
+    public OutboxRelay(NamedParameterJdbcTemplate jdbc,
+                       PlatformTransactionManager transactionManager,
+                       KafkaTemplate<String, Object> kafkaTemplate,
+                       ObjectMapper objectMapper,
+                       MeterRegistry meterRegistry) {
+        this.jdbc = jdbc;
+        this.claimTx = new TransactionTemplate(transactionManager);
+        this.kafkaTemplate = kafkaTemplate;
+        this.objectMapper = objectMapper;
+
+        this.published = meterRegistry.counter("portfolio_outbox_published_total");
+        this.failed = meterRegistry.counter("portfolio_outbox_failed_total");
+        this.dead = meterRegistry.counter("portfolio_outbox_dead_total");
+        this.batchSizes = DistributionSummary.builder("portfolio_outbox_batch_size").register(meterRegistry);
+        this.batchTimer = Timer.builder("portfolio_outbox_batch").register(meterRegistry);
+        // age of the oldest event still waiting, 0 when the outbox is empty
+        Gauge.builder("portfolio_outbox_lag_seconds", lagMillis, v -> v.get() / 1000.0).register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${app.kafka.outbox.poll-interval:200ms}")
+    public void drain() {
+        try {
+            deadLetter();
+            for (int i = 0; i < MAX_BATCHES_PER_RUN; i++) {
+                // a short batch can be followed by more: new rows, or rows that waited on an earlier one just acked
+                if (relayBatch() == 0) break;
+            }
+        } catch (Exception e) {
+            log.warn("Outbox relay run failed, will retry on next poll. reason={}", e.getMessage());
+        }
+        refreshLag();
+    }
+
+    private int relayBatch() {
+        List<Row> rows = claim();
+        if (rows.isEmpty()) return 0;
+
+        long start = System.nanoTime();
+        List<Row> sending = new ArrayList<>(rows.size());
+        List<CompletableFuture<SendResult<String, Object>>> sends = new ArrayList<>(rows.size());
+        List<Long> unsent = new ArrayList<>();
+        Set<String> stopped = new HashSet<>();
+        for (Row row : rows) {
+            if (stopped.contains(row.messageKey())) {
+                unsent.add(row.id());
+                continue;
+            }
+            CompletableFuture<SendResult<String, Object>> f = send(row);
+            // a row that could not even be handed to the producer must not be overtaken by the rest of its key
+            if (f.isCompletedExceptionally()) stopped.add(row.messageKey());
+            sending.add(row);
+            sends.add(f);
+        }
+
+        // the producer batches these by linger.ms/batch.size; we only wait once for the whole poll
+        try {
+            CompletableFuture.allOf(sends.toArray(CompletableFuture[]::new))
+                    .get(sendTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception ignoreCheckedPerSend) {}
+
+        List<Long> sent = new ArrayList<>(sending.size());
+        for (int i = 0; i < sending.size(); i++) {
+            CompletableFuture<SendResult<String, Object>> f = sends.get(i);
+            if (f.isDone() && !f.isCompletedExceptionally()) sent.add(sending.get(i).id());
+        }
+        if (!sent.isEmpty()) {
+            jdbc.update(DELETE_SQL, Map.of("ids", sent));
+        }
+        if (!unsent.isEmpty()) {
+            jdbc.update(RELEASE_SQL, Map.of("ids", unsent));
+        }
+
+        int failures = sending.size() - sent.size();
+        if (failures > 0) {
+            // left claimed; they come back once the lease runs out
+            log.warn("Outbox relay: {} of {} events not acked by Kafka, retrying after lease", failures, sending.size());
+        }
+        published.increment(sent.size());
+        failed.increment(failures);
+        batchSizes.record(rows.size());
+        batchTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return rows.size();
+    }
+
+    // OUTPUT rows come in no particular order; sends must go out in id order
+    private List<Row> claim() {
+        List<Row> rows = claimTx.execute(status -> {
+            jdbc.getJdbcTemplate().execute(CLAIM_LOCK_SQL);
+            return jdbc.query(CLAIM_SQL,
+                    Map.of("batchSize", batchSize, "maxAttempts", maxAttempts, "leaseMs", lease.toMillis()),
+                    (rs, n) -> new Row(rs.getLong("id"), rs.getString("message_key"), rs.getString("payload")));
+        });
+        if (rows == null) return List.of();
+        List<Row> sorted = new ArrayList<>(rows);
+        sorted.sort(Comparator.comparingLong(Row::id));
+        return sorted;
+    }
+
+    private void deadLetter() {
+        int moved = jdbc.update(DEAD_LETTER_SQL, Map.of("maxAttempts", maxAttempts));
+        if (moved > 0) {
+            log.error("Outbox relay: moved {} events that failed {} times to position_outbox_dead", moved, maxAttempts);
+            dead.increment(moved);
+        }
+    }
+
+    private CompletableFuture<SendResult<String, Object>> send(Row row) {
+        try {
+            PositionChangedEvent event = objectMapper.readValue(row.payload(), PositionChangedEvent.class);
+            return kafkaTemplate.send(PositionEventPublisher.toRecord(topic, row.messageKey(), event));
+        } catch (Exception e) {
+            log.error("Outbox relay: cannot send outbox row id={}", row.id(), e);
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private void refreshLag() {
+        try {
+            List<Timestamp> oldest = jdbc.query(OLDEST_SQL, Map.of("maxAttempts", maxAttempts),
+                    (rs, n) -> rs.getTimestamp("created_at"));
+            lagMillis.set(oldest.isEmpty() ? 0 : Math.max(0, System.currentTimeMillis() - oldest.get(0).getTime()));
+        } catch (Exception ignoreFailOpen) {}
+    }
+
+    private record Row(long id, String messageKey, String payload) {}
+}
@@ -0,0 +1,23 @@
+package portfolio_service.kafka;
+
+/**
+ * What position events are keyed by (app.kafka.partition-key). Kafka keeps order per partition,
+ * and the consumer keeps order per key inside a batch, so this is also the ordering guarantee:
+ * positionId orders events of one position, clientId orders all events of one client.
+ */
+public enum PartitionKey {
+    POSITION_ID,
+    CLIENT_ID;
+
+    public static PartitionKey from(String value) {
+        return "clientId".equalsIgnoreCase(value.trim()) || "client-id".equalsIgnoreCase(value.trim())
+                ? CLIENT_ID
+                : POSITION_ID;
+    }
+
+    public String of(PositionChangedEvent event) {
+        return this == CLIENT_ID
+                ? event.payload().clientId()
+                : event.payload().positionId().toString();
+    }
+}
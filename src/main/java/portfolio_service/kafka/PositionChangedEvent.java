@@ -17,7 +17,9 @@ public record PositionChangedEvent(
             String clientId,
             String symbol,
             long quantity,
-            BigDecimal avgPrice
+            BigDecimal avgPrice,
+            // row @Version; a delete carries the next one. null from producers that predate it
+            Long version
     ) {}
 }
 
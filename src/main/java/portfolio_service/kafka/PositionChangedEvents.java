@@ -0,0 +1,9 @@
+package portfolio_service.kafka;
+
+import java.util.List;
+
+/**
+ * Several events from one transaction, published as one application event so listeners can write
+ * or send them as a batch.
+ */
+public record PositionChangedEvents(List<PositionChangedEvent> events) {}
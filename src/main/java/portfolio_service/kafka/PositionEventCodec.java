@@ -0,0 +1,89 @@
+package portfolio_service.kafka;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
+import portfolio_service.proto.PositionEventProto;
+import portfolio_service.redis.PositionProtoMapper;
+
+import java.io.IOException;
+
+/**
+ * Kafka value encodings of PositionChangedEvent.
+ * <p>
+ * Proto values start with {@link #FORMAT_PROTO}; JSON values start with '{'. Readers look at the first byte
+ * and accept both, so producers can be switched from JSON to proto once every consumer runs this code.
+ */
+public final class PositionEventCodec {
+
+    public static final byte FORMAT_PROTO = 0x01;
+
+    // same setup as JacksonConfig, so JSON matches what JsonSerializer used to write
+    private static final ObjectMapper JSON = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    private PositionEventCodec() {}
+
+    public static boolean isProto(byte[] bytes) {
+        return bytes.length > 0 && bytes[0] == FORMAT_PROTO;
+    }
+
+    public static byte[] toProtoBytes(PositionChangedEvent e) throws IOException {
+        PositionChangedEvent.Payload p = e.payload();
+        PositionEventProto.Builder builder = PositionEventProto.newBuilder()
+                .setEventId(PositionProtoMapper.uuidBytes(e.eventId()))
+                .setEventType(PositionEventProto.Type.valueOf(e.eventType().name()))
+                .setOccurredAtMicros(PositionProtoMapper.toMicros(e.occurredAt()))
+                .setTenantId(nullSafe(e.tenantId()))
+                .setTraceId(nullSafe(e.traceId()))
+                .setPositionId(PositionProtoMapper.uuidBytes(p.positionId()))
+                .setClientId(nullSafe(p.clientId()))
+                .setSymbol(nullSafe(p.symbol()))
+                .setQuantity(p.quantity())
+                .setAvgPriceScaled(PositionProtoMapper.toScaled(p.avgPrice()));
+        if (p.version() != null) builder.setVersion(p.version());
+        PositionEventProto msg = builder.build();
+
+        int size = msg.getSerializedSize();
+        byte[] out = new byte[size + 1];
+        out[0] = FORMAT_PROTO;
+        CodedOutputStream cos = CodedOutputStream.newInstance(out, 1, size);
+        msg.writeTo(cos);
+        cos.checkNoSpaceLeft();
+        return out;
+    }
+
+    public static PositionChangedEvent fromProtoBytes(byte[] bytes) throws InvalidProtocolBufferException {
+        PositionEventProto msg = PositionEventProto.parser().parseFrom(bytes, 1, bytes.length - 1);
+        return new PositionChangedEvent(
+                PositionProtoMapper.uuid(msg.getEventId()),
+                PositionEventType.valueOf(msg.getEventType().name()),
+                PositionProtoMapper.fromMicros(msg.getOccurredAtMicros()),
+                msg.getTenantId(),
+                msg.getTraceId().isEmpty() ? null : msg.getTraceId(),
+                new PositionChangedEvent.Payload(
+                        PositionProtoMapper.uuid(msg.getPositionId()),
+                        msg.getClientId(),
+                        msg.getSymbol(),
+                        msg.getQuantity(),
+                        PositionProtoMapper.fromScaled(msg.getAvgPriceScaled()),
+                        msg.hasVersion() ? msg.getVersion() : null
+                )
+        );
+    }
+
+    public static byte[] toJsonBytes(PositionChangedEvent e) throws IOException {
+        return JSON.writeValueAsBytes(e);
+    }
+
+    public static PositionChangedEvent fromJsonBytes(byte[] bytes) throws IOException {
+        return JSON.readValue(bytes, PositionChangedEvent.class);
+    }
+
+    private static String nullSafe(String s) {
+        return s == null ? "" : s;
+    }
+}
@@ -1,29 +1,155 @@
 package portfolio_service.kafka;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
 import io.micrometer.core.instrument.MeterRegistry;
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.Timer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.annotation.KafkaListener;
-import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.kafka.listener.BatchListenerFailedException;
 import org.springframework.stereotype.Component;
+import portfolio_service.redis.CacheInvalidationBatch;
+import portfolio_service.redis.ClientAggregateStore;
+import portfolio_service.redis.RedisKeys;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Batch listener: one call per poll, offsets committed once the whole batch returns (AckMode.BATCH).
+ * The batch is spread over KeyOrderedBatchProcessor shards by partition key; inside a shard events are
+ * coalesced per position so a burst of updates to one position costs one invalidation, and the shard's
+ * keys go to Redis as a single UNLINK.
+ */
 @Component
-@RequiredArgsConstructor
 public class PositionEventConsumer {
 
     private static final Logger log = LoggerFactory.getLogger(PositionEventConsumer.class);
 
-    private final MeterRegistry meterRegistry;
+    private static final String ENV = "prod";
+
+    private final CacheInvalidationBatch invalidations;
+    private final ClientAggregateStore aggregates;
+    private final KeyOrderedBatchProcessor processor;
+    private final PartitionKey partitionKey;
+
+    @Value("${app.cache.write-through:false}")
+    private boolean writeThrough;
+
+    private final Map<PositionEventType, Counter> consumed = new EnumMap<>(PositionEventType.class);
+    private final DistributionSummary batchSizes;
+    private final Timer batchTimer;
+    private final Timer eventLag;
+
+    public PositionEventConsumer(CacheInvalidationBatch invalidations,
+                                 ClientAggregateStore aggregates,
+                                 KeyOrderedBatchProcessor processor,
+                                 @Value("${app.kafka.partition-key:positionId}") String partitionKey,
+                                 MeterRegistry meterRegistry) {
+        this.invalidations = invalidations;
+        this.aggregates = aggregates;
+        this.processor = processor;
+        this.partitionKey = PartitionKey.from(partitionKey);
+        for (PositionEventType type : PositionEventType.values()) {
+            consumed.put(type, meterRegistry.counter("portfolio_kafka_events_consumed_total", "eventType", type.name()));
+        }
+        this.batchSizes = DistributionSummary.builder("portfolio_kafka_consumer_batch_size").register(meterRegistry);
+        this.batchTimer = Timer.builder("portfolio_kafka_consumer_batch").register(meterRegistry);
+        // occurredAt -> consumed, i.e. outbox + broker + consumer delay
+        this.eventLag = Timer.builder("portfolio_kafka_event_lag").register(meterRegistry);
+    }
 
     @KafkaListener(topics = "${app.kafka.topic:portfolio.position.events}", groupId = "${spring.kafka.consumer.group-id:portfolio-service}")
-    public void onMessage(@Payload PositionChangedEvent event) {
-        log.info("Kafka event consumed: type={}, positionId={}, tenantId={}, traceId={}",
-                event.eventType(), event.payload().positionId(), event.tenantId(), event.traceId());
+    public void onMessages(List<ConsumerRecord<String, PositionChangedEvent>> records) {
+        long start = System.nanoTime();
+
+        int failedAt = -1;
+        for (int i = 0; i < records.size(); i++) {
+            if (records.get(i).value() == null) {
+                failedAt = i;
+                break;
+            }
+        }
+        List<ConsumerRecord<String, PositionChangedEvent>> good = failedAt < 0 ? records : records.subList(0, failedAt);
+        try {
+            processor.process(good, r -> partitionKey.of(r.value()), this::process);
+        } catch (KeyOrderedBatchProcessor.ShardFailedException e) {
+            @SuppressWarnings("unchecked")
+            ConsumerRecord<String, PositionChangedEvent> first = (ConsumerRecord<String, PositionChangedEvent>) e.getFirstUnprocessed();
+            throw new BatchListenerFailedException("Position event processing failed", e.getCause(), first);
+        } finally {
+            batchSizes.record(good.size());
+            batchTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
 
-        meterRegistry.counter("portfolio_kafka_events_consumed_total",
-                "eventType", event.eventType().name())
-                .increment();
+        if (failedAt >= 0) {
+            // value failed to deserialize: the error handler commits what came before, sends this one to the DLT
+            // and redelivers the rest
+            throw new BatchListenerFailedException("Undeserializable position event", records.get(failedAt));
+        }
     }
-}
 
+    private void process(List<ConsumerRecord<String, PositionChangedEvent>> records) {
+        Instant now = Instant.now();
+
+        Map<UUID, PositionChangedEvent> latest = new LinkedHashMap<>();
+        for (ConsumerRecord<String, PositionChangedEvent> record : records) {
+            PositionChangedEvent event = record.value();
+
+            consumed.get(event.eventType()).increment();
+            if (event.occurredAt() != null) eventLag.record(Duration.between(event.occurredAt(), now));
+            latest.merge(event.payload().positionId(), event, PositionEventConsumer::newer);
+        }
+
+        Set<String> keys = new LinkedHashSet<>();
+        List<ClientAggregateStore.Change> changes = new ArrayList<>(latest.size());
+        for (PositionChangedEvent event : latest.values()) {
+            String tenantNs = "asset:" + event.tenantId();
+            PositionChangedEvent.Payload p = event.payload();
+            changes.add(new ClientAggregateStore.Change(
+                    RedisKeys.clientAggregate(ENV, tenantNs, p.clientId()),
+                    p.positionId(),
+                    event.eventType() == PositionEventType.POSITION_DELETED,
+                    p.quantity(),
+                    p.avgPrice(),
+                    p.version()));
+
+            // write-through already put the new state in Redis, dropping it here would only cost a miss
+            if (writeThrough && event.eventType() != PositionEventType.POSITION_DELETED) continue;
+
+            keys.add(RedisKeys.positionById(ENV, tenantNs, p.positionId().toString()));
+            keys.add(RedisKeys.positionsByClient(ENV, tenantNs, p.clientId()));
+            keys.add(RedisKeys.positionsByClientGeneration(ENV, tenantNs, p.clientId()));
+        }
+        if (!keys.isEmpty()) invalidations.unlinkAfterCommit(keys.toArray(String[]::new));
+
+        try {
+            aggregates.applyAll(changes);
+        } catch (Exception e) {
+            // the aggregate TTL bounds how long a missed change can skew the totals
+            log.warn("Client aggregate update failed. positions={}, reason={}", changes.size(), e.getMessage());
+        }
+
+        log.debug("Kafka shard consumed: records={}, positions={}, keys={}", records.size(), latest.size(), keys.size());
+    }
+
+    // by row version where both have one, else by time
+    private static PositionChangedEvent newer(PositionChangedEvent a, PositionChangedEvent b) {
+        Long va = a.payload().version();
+        Long vb = b.payload().version();
+        if (va != null && vb != null) return vb < va ? a : b;
+        return b.occurredAt() != null && a.occurredAt() != null && b.occurredAt().isBefore(a.occurredAt()) ? a : b;
+    }
+}
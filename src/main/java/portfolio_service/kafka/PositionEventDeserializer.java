@@ -0,0 +1,23 @@
+package portfolio_service.kafka;
+
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Deserializer;
+
+/**
+ * Reads both proto and JSON values, see PositionEventCodec. Used behind ErrorHandlingDeserializer,
+ * so a value that fails here reaches the listener as null and ends up in the DLT with its raw bytes.
+ */
+public class PositionEventDeserializer implements Deserializer<PositionChangedEvent> {
+
+    @Override
+    public PositionChangedEvent deserialize(String topic, byte[] data) {
+        if (data == null || data.length == 0) return null;
+        try {
+            return PositionEventCodec.isProto(data)
+                    ? PositionEventCodec.fromProtoBytes(data)
+                    : PositionEventCodec.fromJsonBytes(data);
+        } catch (Exception e) {
+            throw new SerializationException("Failed to deserialize position event from " + topic, e);
+        }
+    }
+}
@@ -5,15 +5,18 @@ import org.apache.kafka.clients.producer.ProducerRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.event.TransactionalEventListener;
 
-import java.util.Map;
-import java.util.UUID;
-
+/**
+ * Direct mode (app.kafka.outbox.enabled=false): sends after commit, fire-and-forget.
+ * An event is lost if the process dies between the commit and the send; the outbox mode doesn't have that gap.
+ */
 @Component
 @RequiredArgsConstructor
+@ConditionalOnProperty(name = "app.kafka.outbox.enabled", havingValue = "false")
 public class PositionEventPublisher {
 
     private static final Logger log = LoggerFactory.getLogger(PositionEventPublisher.class);
@@ -21,15 +24,14 @@ public class PositionEventPublisher {
     @Value("${app.kafka.topic:portfolio.position.events}")
     private String topic;
 
+    @Value("${app.kafka.partition-key:positionId}")
+    private String partitionKey;
+
     private final KafkaTemplate<String, Object> kafkaTemplate;
 
     @TransactionalEventListener
     public void publish(PositionChangedEvent event) {
-        ProducerRecord<String, Object> record = new ProducerRecord<>(topic, event.payload().positionId().toString(), event);
-        record.headers().add("X-Tenant-Id", event.tenantId().getBytes());
-        if (event.traceId() != null) {
-            record.headers().add("X-Trace-Id", event.traceId().getBytes());
-        }
+        ProducerRecord<String, Object> record = toRecord(topic, PartitionKey.from(partitionKey).of(event), event);
 
         kafkaTemplate.send(record).whenComplete((result, ex) -> {
             if (ex != null) {
@@ -40,5 +42,18 @@ public class PositionEventPublisher {
             }
         });
     }
-}
 
+    @TransactionalEventListener
+    public void publishAll(PositionChangedEvents batch) {
+        batch.events().forEach(this::publish);
+    }
+
+    static ProducerRecord<String, Object> toRecord(String topic, String key, PositionChangedEvent event) {
+        ProducerRecord<String, Object> record = new ProducerRecord<>(topic, key, event);
+        record.headers().add("X-Tenant-Id", event.tenantId().getBytes());
+        if (event.traceId() != null) {
+            record.headers().add("X-Trace-Id", event.traceId().getBytes());
+        }
+        return record;
+    }
+}
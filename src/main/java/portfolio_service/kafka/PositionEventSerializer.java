@@ -0,0 +1,39 @@
+package portfolio_service.kafka;
+
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Serializer;
+
+import java.util.Map;
+
+/**
+ * Producer value serializer for the position topic and its DLT.
+ * Writes PositionChangedEvent as JSON (the default) or proto depending on {@link #FORMAT_CONFIG};
+ * byte[] values (records the DLT recoverer forwards after a deserialization failure) go out unchanged.
+ */
+public class PositionEventSerializer implements Serializer<Object> {
+
+    public static final String FORMAT_CONFIG = "position.event.format";
+
+    // json until every consumer reads proto too
+    private boolean proto = false;
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+        Object format = configs.get(FORMAT_CONFIG);
+        if (format != null) proto = "proto".equalsIgnoreCase(format.toString().trim());
+    }
+
+    @Override
+    public byte[] serialize(String topic, Object data) {
+        if (data == null) return null;
+        if (data instanceof byte[] raw) return raw;
+        if (!(data instanceof PositionChangedEvent event)) {
+            throw new SerializationException("Unsupported value type for " + topic + ": " + data.getClass().getName());
+        }
+        try {
+            return proto ? PositionEventCodec.toProtoBytes(event) : PositionEventCodec.toJsonBytes(event);
+        } catch (Exception e) {
+            throw new SerializationException("Failed to serialize position event " + event.eventId(), e);
+        }
+    }
+}
@@ -0,0 +1,414 @@
+package portfolio_service.redis;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import portfolio_service.config.ContextPropagatingTaskDecorator;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * The cache-aside read path: near cache, then Redis, then a stampede-protected load that writes back.
+ * What differs between reads (codec, TTLs, how misses are collapsed, how values are written) is a
+ * {@link CacheAsidePolicy}; every stage is recorded in {@link CacheMetrics} under the policy's operation.
+ * Redis is fail-open throughout: any error there reads as a miss.
+ * <p>
+ * Policies with earlyRefresh keep a sidecar key next to each value holding what the load cost and when
+ * the value logically expires. A Redis hit close enough to that expiry (XFetch: the costlier the load, the
+ * earlier) starts one background reload and still returns the current value, so hot keys don't miss.
+ * <p>
+ * Policies with a negativeTtl remember "not found" too: an empty value in Redis and a tombstone in the near cache.
+ */
+@Component
+public class CacheAsideExecutor {
+
+    // a cached "not found" on its way through the executor; callers get null
+    private static final Object ABSENT = new Object();
+    // no encoded value is empty for policies that cache misses, so an empty value marks one
+    private static final byte[] TOMBSTONE = new byte[0];
+
+    private final RedisBytesCache cache;
+    private final NearCache nearCache;
+    private final RedisLock lock;
+    private final SingleFlight singleFlight;
+    private final CacheFillNotifier fillNotifier;
+    private final CacheMetrics metrics;
+    private final ContextPropagatingTaskDecorator contextPropagation;
+    private final boolean earlyRefreshEnabled;
+    private final double earlyRefreshBeta;
+    private final ExecutorService refreshPool;
+    // keys with a background refresh queued or running in this JVM
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+
+    public CacheAsideExecutor(RedisBytesCache cache,
+                              NearCache nearCache,
+                              RedisLock lock,
+                              SingleFlight singleFlight,
+                              CacheFillNotifier fillNotifier,
+                              CacheMetrics metrics,
+                              ContextPropagatingTaskDecorator contextPropagation,
+                              @Value("${app.cache.early-refresh.enabled:true}") boolean earlyRefreshEnabled,
+                              @Value("${app.cache.early-refresh.beta:1.0}") double earlyRefreshBeta,
+                              @Value("${app.cache.early-refresh.threads:2}") int threads,
+                              @Value("${app.cache.early-refresh.queue-size:256}") int queueSize) {
+        this.cache = cache;
+        this.nearCache = nearCache;
+        this.lock = lock;
+        this.singleFlight = singleFlight;
+        this.fillNotifier = fillNotifier;
+        this.metrics = metrics;
+        this.contextPropagation = contextPropagation;
+        this.earlyRefreshEnabled = earlyRefreshEnabled;
+        this.earlyRefreshBeta = earlyRefreshBeta;
+        // bounded: when it's full the refresh is skipped and the key simply expires as before
+        this.refreshPool = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), r -> {
+                    Thread t = new Thread(r, "cache-early-refresh");
+                    t.setDaemon(true);
+                    return t;
+                });
+    }
+
+    /**
+     * @param lockKey only used with {@link CacheAsidePolicy.Stampede#DISTRIBUTED_LOCK}
+     * @param loader  loads the value from the source of truth; may throw (e.g. NotFoundException), or return
+     *                null for "not found" if the policy has a negativeTtl. Null when the caller already knows
+     *                there is nothing to load: the caches are still read, a miss comes back as null (FILTERED)
+     * @return null only for a (cached) "not found"
+     */
+    public <T> T get(CacheAsidePolicy<T> policy, String key, String lockKey, Supplier<T> loader) {
+        CacheMetrics.Stages m = metrics.stages(policy.operation());
+
+        T near = nearGet(policy, m, key);
+        if (near != null) return present(near);
+
+        List<byte[]> values = readL2(policy, m, l2Keys(policy, key, null), loader != null);
+        T cached = values == null ? null : decodeCached(policy, m, values.get(0));
+        if (cached != null) {
+            if (cached != ABSENT) maybeRefreshEarly(policy, m, key, lockKey, loader, refreshMeta(policy, values));
+            return present(remember(policy, key, cached));
+        }
+
+        return present(load(policy, m, key, lockKey, loader));
+    }
+
+    /**
+     * Same as get, except that a Redis hit also comes back as the raw bytes, together with companionKey's value
+     * fetched in the same MGET (e.g. a version kept next to the value). For callers that only copy bytes out.
+     * With a near cache the hit is still decoded once to fill it, so the next reads stay in process;
+     * bytes that don't decode are treated as a miss.
+     */
+    public <T> Read<T> read(CacheAsidePolicy<T> policy, String key, String lockKey, String companionKey, Supplier<T> loader) {
+        CacheMetrics.Stages m = metrics.stages(policy.operation());
+
+        T near = nearGet(policy, m, key);
+        if (near != null) return Read.decoded(present(near));
+
+        List<byte[]> values = readL2(policy, m, l2Keys(policy, key, companionKey), loader != null);
+        if (values != null) {
+            if (isTombstone(policy, values.get(0))) {
+                remember(policy, key, absent());
+                return Read.decoded(null);
+            }
+            T decoded = null;
+            if (policy.nearTtl() != null) {
+                decoded = decodeOrNull(m, policy.codec(), values.get(0));
+                if (decoded == null) return Read.decoded(present(load(policy, m, key, lockKey, loader)));
+                remember(policy, key, decoded);
+            }
+            maybeRefreshEarly(policy, m, key, lockKey, loader, refreshMeta(policy, values));
+            return new Read<>(decoded, values.get(0), companionKey == null ? null : values.get(1));
+        }
+
+        return Read.decoded(present(load(policy, m, key, lockKey, loader)));
+    }
+
+    /**
+     * For multi-key paths that can't go through get: null for null bytes, and fail-open on corrupt ones.
+     */
+    public static <T> T decodeOrNull(CacheMetrics.Stages m, CacheCodec<T> codec, byte[] bytes) {
+        if (bytes == null) return null;
+        long start = System.nanoTime();
+        try {
+            T value = codec.decode(bytes);
+            m.decode(System.nanoTime() - start);
+            return value;
+        } catch (Exception e) {
+            m.failOpen(CacheMetrics.Stage.DECODE);
+            return null;
+        }
+    }
+
+    /**
+     * Result of {@link #read}: value (near hit or load; null for "not found"), or on a Redis hit the raw bytes
+     * (plus the decoded value if the policy has a near cache).
+     */
+    public record Read<T>(T value, byte[] bytes, byte[] companion) {
+
+        static <T> Read<T> decoded(T value) {
+            return new Read<>(value, null, null);
+        }
+
+        public boolean raw() {
+            return bytes != null;
+        }
+    }
+
+    private <T> T nearGet(CacheAsidePolicy<T> policy, CacheMetrics.Stages m, String key) {
+        if (policy.nearTtl() == null) return null;
+        T near = nearCache.getOrAbsent(key, absent());
+        if (near != null) m.lookup(near == ABSENT ? CacheMetrics.Lookup.NEGATIVE_HIT : CacheMetrics.Lookup.NEAR_HIT);
+        return near;
+    }
+
+    private <T> T remember(CacheAsidePolicy<T> policy, String key, T value) {
+        if (policy.nearTtl() == null) return value;
+        if (value == ABSENT) nearCache.putAbsent(key, policy.negativeTtl());
+        else nearCache.put(key, value, policy.nearTtl());
+        return value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T absent() {
+        return (T) ABSENT;
+    }
+
+    private static <T> T present(T value) {
+        return value == ABSENT ? null : value;
+    }
+
+    private static boolean isTombstone(CacheAsidePolicy<?> policy, byte[] bytes) {
+        return policy.negativeTtl() != null && bytes != null && bytes.length == 0;
+    }
+
+    private <T> T decodeCached(CacheAsidePolicy<T> policy, CacheMetrics.Stages m, byte[] bytes) {
+        return isTombstone(policy, bytes) ? absent() : decodeOrNull(m, policy.codec(), bytes);
+    }
+
+    private <T> T load(CacheAsidePolicy<T> policy, CacheMetrics.Stages m, String key, String lockKey, Supplier<T> loader) {
+        if (loader == null) return null;
+        return singleFlight.execute(key, () -> switch (policy.stampede()) {
+            case DISTRIBUTED_LOCK -> loadUnderLock(policy, m, key, lockKey, loader);
+            case SINGLE_FLIGHT -> loadAndCache(policy, m, key, loader);
+        });
+    }
+
+    private <T> T loadUnderLock(CacheAsidePolicy<T> policy, CacheMetrics.Stages m, String key, String lockKey,
+                                Supplier<T> loader) {
+        String token = null;
+        try {
+            token = lock.tryLock(lockKey, CacheTtl.cacheRebuildLockTtl());
+            m.lock(token != null);
+            if (token == null) {
+                T cached = awaitCacheFill(policy, m, key);
+                if (cached != null) return remember(policy, key, cached);
+
+                return loadAndCache(policy, m, key, loader);
+            }
+
+            // someone may have filled it between our miss and the lock
+            T cached = readCache(policy, m, key);
+            if (cached != null) return remember(policy, key, cached);
+
+            return loadAndCache(policy, m, key, loader);
+
+        } finally {
+            releaseAndNotify(m, lockKey, token, key);
+        }
+    }
+
+    private <T> T loadAndCache(CacheAsidePolicy<T> policy, CacheMetrics.Stages m, String key, Supplier<T> loader) {
+        long start = System.nanoTime();
+        T value = m.dbLoad(loader);
+        if (value == null && policy.negativeTtl() != null) value = absent();
+        write(policy, m, key, value, System.nanoTime() - start);
+        return remember(policy, key, value);
+    }
+
+    private <T> void write(CacheAsidePolicy<T> policy, CacheMetrics.Stages m, String key, T value, long loadNanos) {
+        try {
+            if (value == ABSENT) {
+                // NX: a create that committed meanwhile may already have cached the real value
+                cache.setIfAbsent(key, TOMBSTONE, policy.negativeTtl());
+                return;
+            }
+            byte[] bytes = policy.codec().encode(value);
+            m.payload(bytes.length);
+            Duration ttl = policy.ttl().get();
+            if (policy.writer() == null) cache.set(key, bytes, ttl);
+            // refused: the cached value is someone else's, so is its refresh schedule
+            else if (!policy.writer().write(key, value, bytes, ttl)) return;
+
+            if (earlyRefresh(policy)) {
+                long costMs = Math.max(1, TimeUnit.NANOSECONDS.toMillis(loadNanos));
+                long expiresAt = System.currentTimeMillis() + ttl.toMillis();
+                cache.set(RedisKeys.refreshMeta(key), (costMs + ":" + expiresAt).getBytes(StandardCharsets.US_ASCII), ttl);
+            }
+        } catch (Exception e) {
+            m.failOpen(CacheMetrics.Stage.L2_WRITE);
+        }
+    }
+
+    private boolean earlyRefresh(CacheAsidePolicy<?> policy) {
+        return earlyRefreshEnabled && policy.earlyRefresh();
+    }
+
+    // the value first, then companionKey if any, then the refresh metadata if the policy keeps it
+    private List<String> l2Keys(CacheAsidePolicy<?> policy, String key, String companionKey) {
+        if (companionKey == null && !earlyRefresh(policy)) return List.of(key);
+        List<String> keys = new ArrayList<>(3);
+        keys.add(key);
+        if (companionKey != null) keys.add(companionKey);
+        if (earlyRefresh(policy)) keys.add(RedisKeys.refreshMeta(key));
+        return keys;
+    }
+
+    private byte[] refreshMeta(CacheAsidePolicy<?> policy, List<byte[]> values) {
+        return earlyRefresh(policy) ? values.get(values.size() - 1) : null;
+    }
+
+    /**
+     * XFetch: refresh once now - cost * beta * ln(rand) reaches the logical expiry. Behind a near cache this
+     * instance only looks at Redis once per near TTL, so that much is added to now, otherwise a hot key
+     * would sit in the near cache through its whole refresh window.
+     */
+    private <T> void maybeRefreshEarly(CacheAsidePolicy<T> policy, CacheMetrics.Stages m, String key, String lockKey,
+                                       Supplier<T> loader, byte[] meta) {
+        if (meta == null || loader == null) return;
+        long costMs;
+        long expiresAt;
+        try {
+            String s = new String(meta, StandardCharsets.US_ASCII);
+            int sep = s.indexOf(':');
+            costMs = Long.parseLong(s, 0, sep, 10);
+            expiresAt = Long.parseLong(s, sep + 1, s.length(), 10);
+        } catch (Exception ignoreFailOpen) {
+            return;
+        }
+
+        long nearHorizon = policy.nearTtl() == null ? 0
+                : Math.min(policy.nearTtl().toMillis(), CacheTtl.nearCacheTtl().toMillis());
+        double gap = -costMs * earlyRefreshBeta * Math.log(1.0 - ThreadLocalRandom.current().nextDouble());
+        if (System.currentTimeMillis() + nearHorizon + gap < expiresAt) return;
+
+        refreshInBackground(policy, m, key, lockKey, loader);
+    }
+
+    // one refresh per key in this JVM; with DISTRIBUTED_LOCK also one across instances, without waiting for it
+    private <T> void refreshInBackground(CacheAsidePolicy<T> policy, CacheMetrics.Stages m, String key, String lockKey,
+                                         Supplier<T> loader) {
+        if (!refreshing.add(key)) {
+            m.earlyRefresh(CacheMetrics.Refresh.SKIPPED);
+            return;
+        }
+
+        Runnable refresh = () -> {
+            String token = null;
+            try {
+                if (policy.stampede() == CacheAsidePolicy.Stampede.DISTRIBUTED_LOCK) {
+                    token = lock.tryLock(lockKey, CacheTtl.cacheRebuildLockTtl());
+                    if (token == null) {
+                        m.earlyRefresh(CacheMetrics.Refresh.SKIPPED);
+                        return;
+                    }
+                }
+                m.earlyRefresh(CacheMetrics.Refresh.STARTED);
+                loadAndCache(policy, m, key, loader);
+            } catch (Exception e) {
+                // the current value stays until it expires; then it's an ordinary miss
+                m.earlyRefresh(CacheMetrics.Refresh.FAILED);
+            } finally {
+                releaseAndNotify(m, lockKey, token, key);
+                refreshing.remove(key);
+            }
+        };
+
+        try {
+            // the loader and writer may need the tenant
+            refreshPool.execute(contextPropagation.decorate(refresh));
+        } catch (RejectedExecutionException e) {
+            refreshing.remove(key);
+            m.earlyRefresh(CacheMetrics.Refresh.SKIPPED);
+        }
+    }
+
+    // values for keys if the first one is there, null on a miss or a Redis error
+    private List<byte[]> readL2(CacheAsidePolicy<?> policy, CacheMetrics.Stages m, List<String> keys, boolean loadable) {
+        long start = System.nanoTime();
+        try {
+            List<byte[]> values = keys.size() == 1 ? singletonOrNull(cache.get(keys.get(0))) : cache.mget(keys);
+            boolean hit = values != null && values.get(0) != null;
+            m.lookup(!hit ? (loadable ? CacheMetrics.Lookup.MISS : CacheMetrics.Lookup.FILTERED)
+                    : isTombstone(policy, values.get(0)) ? CacheMetrics.Lookup.NEGATIVE_HIT : CacheMetrics.Lookup.HIT);
+            return hit ? values : null;
+        } catch (Exception e) {
+            m.lookup(CacheMetrics.Lookup.ERROR);
+            m.failOpen(CacheMetrics.Stage.L2_READ);
+            return null;
+        } finally {
+            m.l2Read(System.nanoTime() - start);
+        }
+    }
+
+    private static List<byte[]> singletonOrNull(byte[] value) {
+        return value == null ? null : List.<byte[]>of(value);
+    }
+
+    // Lost the rebuild lock: wait for the holder's pub/sub signal instead of polling.
+    private <T> T awaitCacheFill(CacheAsidePolicy<T> policy, CacheMetrics.Stages m, String key) {
+        long start = System.nanoTime();
+        T cached = null;
+        CompletableFuture<Void> filled = fillNotifier.register(key);
+        try {
+            cached = readCache(policy, m, key);
+            if (cached != null) return cached;
+
+            if (!fillNotifier.await(filled, CacheTtl.cacheFillWaitTimeout())) return null;
+            cached = readCache(policy, m, key);
+            return cached;
+        } finally {
+            fillNotifier.unregister(key, filled);
+            m.fillWait(System.nanoTime() - start, cached != null);
+        }
+    }
+
+    private <T> T readCache(CacheAsidePolicy<T> policy, CacheMetrics.Stages m, String key) {
+        byte[] bytes;
+        try {
+            bytes = cache.get(key);
+        } catch (Exception e) {
+            m.failOpen(CacheMetrics.Stage.L2_READ);
+            return null;
+        }
+        return decodeCached(policy, m, bytes);
+    }
+
+    private void releaseAndNotify(CacheMetrics.Stages m, String lockKey, String token, String key) {
+        if (token == null) return;
+        try {
+            lock.unlock(lockKey, token);
+        } catch (Exception e) {
+            // the lock just expires on its own
+            m.failOpen(CacheMetrics.Stage.LOCK);
+        }
+        fillNotifier.notifyDone(key);
+    }
+
+    @PreDestroy
+    public void close() {
+        refreshPool.shutdown();
+    }
+}
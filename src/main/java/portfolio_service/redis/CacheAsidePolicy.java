@@ -0,0 +1,44 @@
+package portfolio_service.redis;
+
+import lombok.Builder;
+
+import java.time.Duration;
+import java.util.function.Supplier;
+
+/**
+ * Everything {@link CacheAsideExecutor} needs to know about one kind of cached read.
+ *
+ * @param ttl     Redis TTL, asked for on every write so jitter applies per key
+ * @param nearTtl L2 TTL handed to {@link NearCache#put} (which caps it); null keeps the value out of the near cache
+ * @param writer  how a loaded value goes to Redis; null is a plain SET
+ * @param negativeTtl  when set, a loader returning null is cached as "not found" for this long
+ * @param earlyRefresh reload in the background shortly before the value expires (XFetch), so hot keys don't miss
+ */
+@Builder
+public record CacheAsidePolicy<T>(CacheMetrics.Operation operation,
+                                  CacheCodec<T> codec,
+                                  Supplier<Duration> ttl,
+                                  Duration nearTtl,
+                                  Stampede stampede,
+                                  L2Writer<T> writer,
+                                  Duration negativeTtl,
+                                  boolean earlyRefresh) {
+
+    /**
+     * What keeps a miss from turning into one DB load per caller.
+     */
+    public enum Stampede {
+        /** one loader per key in this JVM, plus a Redis lock across instances; losers wait for the fill signal */
+        DISTRIBUTED_LOCK,
+        /** one loader per key in this JVM only, for cheap loads where a lock round trip isn't worth it */
+        SINGLE_FLIGHT
+    }
+
+    @FunctionalInterface
+    public interface L2Writer<T> {
+        /**
+         * @return false if the write was refused (e.g. a newer version is cached), so nothing else is written for it
+         */
+        boolean write(String key, T value, byte[] bytes, Duration ttl);
+    }
+}
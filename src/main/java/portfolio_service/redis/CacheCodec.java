@@ -0,0 +1,23 @@
+package portfolio_service.redis;
+
+import java.util.function.Function;
+
+/**
+ * How a cached type goes to and from the bytes stored in Redis.
+ */
+public interface CacheCodec<T> {
+
+    byte[] encode(T value);
+
+    T decode(byte[] bytes);
+
+    static <T> CacheCodec<T> of(Function<T, byte[]> encode, Function<byte[], T> decode) {
+        return new CacheCodec<>() {
+            @Override
+            public byte[] encode(T value) { return encode.apply(value); }
+
+            @Override
+            public T decode(byte[] bytes) { return decode.apply(bytes); }
+        };
+    }
+}
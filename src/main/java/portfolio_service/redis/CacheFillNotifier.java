@@ -0,0 +1,83 @@
+package portfolio_service.redis;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Wakes up callers that lost the rebuild lock as soon as the lock holder is done,
+ * on any instance, instead of polling Redis on a timer.
+ * The holder publishes the cache key on a pub/sub channel once it releases the lock.
+ */
+@Component
+@RequiredArgsConstructor
+public class CacheFillNotifier implements MessageListener {
+
+    private static final String ENV = "prod";
+
+    private final StringRedisTemplate redis;
+    // one future per waiter: a waiter that gives up must not take the others' signal with it
+    private final ConcurrentHashMap<String, Set<CompletableFuture<Void>>> waiters = new ConcurrentHashMap<>();
+
+    /**
+     * Register before re-checking the cache, so a fill that lands in between is not missed.
+     */
+    public CompletableFuture<Void> register(String cacheKey) {
+        CompletableFuture<Void> signal = new CompletableFuture<>();
+        waiters.compute(cacheKey, (k, signals) -> {
+            if (signals == null) signals = ConcurrentHashMap.newKeySet();
+            signals.add(signal);
+            return signals;
+        });
+        return signal;
+    }
+
+    /**
+     * The key's entry goes away with its last waiter.
+     */
+    public void unregister(String cacheKey, CompletableFuture<Void> signal) {
+        waiters.computeIfPresent(cacheKey, (k, signals) -> {
+            signals.remove(signal);
+            return signals.isEmpty() ? null : signals;
+        });
+    }
+
+    /**
+     * @return true if the rebuild finished within the timeout, false otherwise
+     */
+    public boolean await(CompletableFuture<Void> signal, Duration timeout) {
+        try {
+            signal.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+            return true;
+        } catch (TimeoutException | ExecutionException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    public void notifyDone(String cacheKey) {
+        try {
+            redis.convertAndSend(RedisKeys.cacheFilledChannel(ENV), cacheKey);
+        } catch (Exception ignoreFailOpen) {}
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String cacheKey = new String(message.getBody(), StandardCharsets.UTF_8);
+        Set<CompletableFuture<Void>> signals = waiters.remove(cacheKey);
+        if (signals != null) signals.forEach(signal -> signal.complete(null));
+    }
+}
@@ -0,0 +1,86 @@
+package portfolio_service.redis;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects cache keys to invalidate for the current transaction and sends them after commit
+ * as one UNLINK. Deleting before commit lets a concurrent reader repopulate the old row
+ * in between; deleting after commit closes that window. Failed deletes are retried with backoff.
+ */
+@Component
+@RequiredArgsConstructor
+public class CacheInvalidationBatch {
+
+    private static final Logger log = LoggerFactory.getLogger(CacheInvalidationBatch.class);
+
+    private static final long[] RETRY_DELAYS_MS = {100, 400, 1600};
+
+    private final RedisBytesCache cache;
+    private final NearCache nearCache;
+
+    private final ScheduledExecutorService retries = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "cache-invalidation-retry");
+        t.setDaemon(true);
+        return t;
+    });
+
+    @SuppressWarnings("unchecked")
+    public void unlinkAfterCommit(String... keys) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            unlinkWithRetry(List.of(keys), 0);
+            return;
+        }
+
+        Set<String> pending = (Set<String>) TransactionSynchronizationManager.getResource(this);
+        if (pending == null) {
+            Set<String> created = new LinkedHashSet<>();
+            TransactionSynchronizationManager.bindResource(this, created);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(CacheInvalidationBatch.this);
+                    if (status == STATUS_COMMITTED) unlinkWithRetry(new ArrayList<>(created), 0);
+                }
+            });
+            pending = created;
+        }
+        pending.addAll(Arrays.asList(keys));
+    }
+
+    private void unlinkWithRetry(List<String> keys, int attempt) {
+        if (keys.isEmpty()) return;
+        if (attempt == 0) nearCache.invalidateLocal(keys);
+
+        try {
+            cache.unlinkAll(keys);
+            nearCache.invalidate(keys);
+        } catch (Exception e) {
+            if (attempt >= RETRY_DELAYS_MS.length) {
+                log.error("Cache invalidation failed, giving up after {} retries. keys={}", attempt, keys, e);
+                return;
+            }
+            log.warn("Cache invalidation failed, retrying. attempt={}, keys={}, reason={}", attempt + 1, keys, e.getMessage());
+            retries.schedule(() -> unlinkWithRetry(keys, attempt + 1), RETRY_DELAYS_MS[attempt], TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        retries.shutdown();
+    }
+}
@@ -0,0 +1,156 @@
+package portfolio_service.redis;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import portfolio_service.config.TenantContext;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Stage meters for the cache-aside read path, tagged by operation and tenant.
+ * Meters are built once per (operation, tenant) and kept, so recording is a map lookup plus an add.
+ * Tenants beyond app.metrics.max-tenants share the tenant tag "other" to bound the series count.
+ */
+@Component
+public class CacheMetrics {
+
+    public enum Operation {
+        GET_BY_ID("getById"),
+        LIST_BY_CLIENT("listByClient"),
+        LIST_PAGE("listByClientPage"),
+        BATCH_GET("batchGet"),
+        CLIENT_PORTFOLIO("clientPortfolio");
+
+        private final String tag;
+
+        Operation(String tag) { this.tag = tag; }
+    }
+
+    // NEGATIVE_HIT: a cached "not found" (either level); FILTERED: a miss whose DB load the id filter skipped
+    public enum Lookup { NEAR_HIT, HIT, NEGATIVE_HIT, FILTERED, MISS, ERROR }
+
+    // background early refreshes: started, not started (already running here or elsewhere, pool full), failed
+    public enum Refresh { STARTED, SKIPPED, FAILED }
+
+    // where a swallowed (fail-open) exception came from
+    public enum Stage { L2_READ, L2_WRITE, DECODE, LOCK }
+
+    private static final String OTHER_TENANT = "other";
+
+    private final MeterRegistry registry;
+    private final int maxTenants;
+    private final Map<Operation, ConcurrentHashMap<String, Stages>> byOperation = new EnumMap<>(Operation.class);
+
+    public CacheMetrics(MeterRegistry registry, @Value("${app.metrics.max-tenants:100}") int maxTenants) {
+        this.registry = registry;
+        this.maxTenants = maxTenants;
+        for (Operation op : Operation.values()) byOperation.put(op, new ConcurrentHashMap<>());
+    }
+
+    /**
+     * Meters for op and the current tenant.
+     */
+    public Stages stages(Operation op) {
+        ConcurrentHashMap<String, Stages> byTenant = byOperation.get(op);
+        String tenant = TenantContext.get();
+        Stages s = byTenant.get(tenant);
+        if (s != null) return s;
+        if (byTenant.size() >= maxTenants) tenant = OTHER_TENANT;
+        return byTenant.computeIfAbsent(tenant, t -> new Stages(registry, Tags.of("operation", op.tag, "tenant", t)));
+    }
+
+    public static final class Stages {
+
+        private final Map<Lookup, Counter> lookups = new EnumMap<>(Lookup.class);
+        private final Map<Stage, Counter> failOpen = new EnumMap<>(Stage.class);
+        private final Map<Refresh, Counter> refreshes = new EnumMap<>(Refresh.class);
+        private final Counter lockAcquired;
+        private final Counter lockContended;
+        private final Timer l2Read;
+        private final Timer fillWaitFilled;
+        private final Timer fillWaitTimedOut;
+        private final Timer dbLoad;
+        private final Timer decode;
+        private final DistributionSummary payloadBytes;
+
+        private Stages(MeterRegistry registry, Tags tags) {
+            for (Lookup l : Lookup.values()) {
+                lookups.put(l, Counter.builder("portfolio_cache_lookups")
+                        .tags(tags).tag("result", l.name().toLowerCase())
+                        .register(registry));
+            }
+            for (Stage s : Stage.values()) {
+                failOpen.put(s, Counter.builder("portfolio_cache_fail_open")
+                        .tags(tags).tag("stage", s.name().toLowerCase())
+                        .register(registry));
+            }
+            for (Refresh r : Refresh.values()) {
+                refreshes.put(r, Counter.builder("portfolio_cache_early_refresh")
+                        .tags(tags).tag("result", r.name().toLowerCase())
+                        .register(registry));
+            }
+            lockAcquired = Counter.builder("portfolio_cache_rebuild_lock").tags(tags).tag("result", "acquired").register(registry);
+            lockContended = Counter.builder("portfolio_cache_rebuild_lock").tags(tags).tag("result", "contended").register(registry);
+            l2Read = timer("portfolio_cache_l2_read", tags).register(registry);
+            // time spent waiting for another caller's rebuild, split by whether it showed up in time
+            fillWaitFilled = timer("portfolio_cache_fill_wait", tags).tag("result", "filled").register(registry);
+            fillWaitTimedOut = timer("portfolio_cache_fill_wait", tags).tag("result", "timeout").register(registry);
+            dbLoad = timer("portfolio_cache_db_load", tags).register(registry);
+            decode = timer("portfolio_cache_decode", tags).register(registry);
+            payloadBytes = DistributionSummary.builder("portfolio_cache_payload_bytes")
+                    .baseUnit("bytes")
+                    .tags(tags)
+                    .publishPercentileHistogram()
+                    .minimumExpectedValue(64.0)
+                    .maximumExpectedValue(4.0 * 1024 * 1024)
+                    .register(registry);
+        }
+
+        // histogram buckets trimmed to the range these stages live in, the series count is per tenant
+        private static Timer.Builder timer(String name, Tags tags) {
+            return Timer.builder(name)
+                    .tags(tags)
+                    .publishPercentileHistogram()
+                    .minimumExpectedValue(Duration.ofNanos(50_000))
+                    .maximumExpectedValue(Duration.ofSeconds(2));
+        }
+
+        public void lookup(Lookup result) { lookups.get(result).increment(); }
+
+        public void failOpen(Stage stage) { failOpen.get(stage).increment(); }
+
+        public void earlyRefresh(Refresh result) { refreshes.get(result).increment(); }
+
+        public void lock(boolean acquired) { (acquired ? lockAcquired : lockContended).increment(); }
+
+        public void l2Read(long nanos) { l2Read.record(nanos, TimeUnit.NANOSECONDS); }
+
+        public void fillWait(long nanos, boolean filled) {
+            (filled ? fillWaitFilled : fillWaitTimedOut).record(nanos, TimeUnit.NANOSECONDS);
+        }
+
+        public <T> T dbLoad(Supplier<T> load) {
+            long start = System.nanoTime();
+            try {
+                return load.get();
+            } finally {
+                dbLoad.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        public void decode(long nanos) { decode.record(nanos, TimeUnit.NANOSECONDS); }
+
+        // size of what was written to Redis
+        public void payload(int bytes) { payloadBytes.record(bytes); }
+    }
+}
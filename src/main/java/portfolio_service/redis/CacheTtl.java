@@ -6,11 +6,48 @@ public final class CacheTtl {
     private CacheTtl() {}
 
     public static Duration positionTtl() { return Duration.ofSeconds(30); }
+    // "no such position": short, an id scan shouldn't pin memory and a create clears it anyway
+    public static Duration positionNotFoundTtl() { return Duration.ofSeconds(5); }
     public static Duration clientListTtl() { return Duration.ofSeconds(20); }
 
+    public static Duration clientPageTtl() { return clientListTtl(); }
+    // outlives the pages it names; when it expires the next reader simply starts a new generation
+    public static Duration clientPageGenerationTtl() { return clientPageTtl().multipliedBy(3); }
+
     public static Duration cacheRebuildLockTtl() { return Duration.ofSeconds(2); }
+    public static Duration cacheFillWaitTimeout() { return Duration.ofMillis(450); }
+
+    // L1 entries live for min(nearCacheTtl, L2 ttl) so they never outlive the Redis copy
+    public static Duration nearCacheTtl() { return Duration.ofSeconds(5); }
+
+    // Cache-Control max-age for reads. Browsers and edge proxies never see our invalidations, so they get
+    // the staleness the near cache already tolerates rather than the Redis TTL; revalidating after that
+    // is a 304 answered from Redis metadata.
+    public static Duration positionHttpMaxAge() { return min(positionTtl(), Duration.ofSeconds(2)); }
+    public static Duration clientListHttpMaxAge() { return min(clientListTtl(), Duration.ofSeconds(2)); }
+
+    // must outlive any position value so a late, older write can't resurrect a deleted one
+    public static Duration versionTombstoneTtl() { return positionTtl().plusSeconds(30); }
+
+    // client aggregates are kept current by events; the TTL only bounds drift from a missed event
+    public static Duration clientAggregateTtl() { return Duration.ofHours(1); }
+
+    // how long a deleted position's entry rejects late events for it; outlasts an outbox retry cycle
+    public static Duration clientAggregateTombstoneTtl() { return Duration.ofMinutes(10); }
 
     public static Duration positionTtlWithJitter() {
         return TtlJitter.withJitter(positionTtl(), 10);
     }
+
+    public static Duration clientListTtlWithJitter() {
+        return TtlJitter.withJitter(clientListTtl(), 5);
+    }
+
+    public static Duration clientPageTtlWithJitter() {
+        return TtlJitter.withJitter(clientPageTtl(), 5);
+    }
+
+    private static Duration min(Duration a, Duration b) {
+        return a.compareTo(b) <= 0 ? a : b;
+    }
 }
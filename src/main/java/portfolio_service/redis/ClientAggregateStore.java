@@ -0,0 +1,108 @@
+package portfolio_service.redis;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+import portfolio_service.dto.PositionResponse;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Per-client running totals (position count, quantity, cost basis) in a Redis hash, kept current by
+ * applying each position change to it instead of re-reading the client's positions.
+ * The hash also keeps the last applied state and version of every position, which is what makes a
+ * change applicable as a delta and lets late or duplicate events be ignored.
+ * A missing hash is built once from the DB (bootstrap); changes that arrive before that are merged into it.
+ */
+@Component
+@RequiredArgsConstructor
+public class ClientAggregateStore {
+
+    private static final byte[] APPLY_SCRIPT = RedisLuaScripts.CLIENT_AGGREGATE_APPLY.getBytes(StandardCharsets.UTF_8);
+
+    private final StringRedisTemplate redis;
+
+    /**
+     * @param version the row @Version (a delete's is the next one); null for events from producers that
+     *                predate it, which drop the aggregate instead so the next read rebuilds it
+     */
+    public record Change(String key, UUID positionId, boolean deleted, long quantity, BigDecimal avgPrice, Long version) {}
+
+    public record Totals(long positionCount, long totalQuantity, BigDecimal costBasis) {}
+
+    /**
+     * Applies all changes in one pipelined round trip.
+     */
+    public void applyAll(List<Change> changes) {
+        if (changes.isEmpty()) return;
+        String ttl = String.valueOf(CacheTtl.clientAggregateTtl().toMillis());
+        String tombstoneTtl = String.valueOf(CacheTtl.clientAggregateTombstoneTtl().toMillis());
+        redis.executePipelined((RedisCallback<Object>) connection -> {
+            for (Change c : changes) {
+                if (c.version() == null) {
+                    connection.keyCommands().del(bytes(c.key()));
+                    continue;
+                }
+                connection.scriptingCommands().eval(APPLY_SCRIPT, ReturnType.INTEGER, 2,
+                        bytes(c.key()),
+                        bytes(RedisKeys.clientAggregateTombstones(c.key())),
+                        bytes(c.positionId().toString()),
+                        bytes(c.deleted() ? "D" : "L"),
+                        bytes(String.valueOf(c.quantity())),
+                        bytes(String.valueOf(PositionProtoMapper.toScaled(c.avgPrice()))),
+                        bytes(String.valueOf(c.version())),
+                        bytes(ttl),
+                        bytes(tombstoneTtl));
+            }
+            return null;
+        });
+    }
+
+    /**
+     * @return the totals, or null if the aggregate has not been built yet
+     */
+    public Totals read(String key) {
+        List<String> v = redis.<String, String>opsForHash().multiGet(key, List.of("ready", "count", "qty", "cost"));
+        if (v == null || v.get(0) == null) return null;
+        return new Totals(
+                Long.parseLong(v.get(1)),
+                Long.parseLong(v.get(2)),
+                BigDecimal.valueOf(Long.parseLong(v.get(3)), PositionProtoMapper.PRICE_SCALE));
+    }
+
+    public void bootstrap(String key, List<PositionResponse> positions) {
+        List<String> args = new ArrayList<>(1 + positions.size() * 4);
+        args.add(String.valueOf(CacheTtl.clientAggregateTtl().toMillis()));
+        for (PositionResponse p : positions) {
+            args.add(p.getId().toString());
+            args.add(String.valueOf(p.getQuantity()));
+            args.add(String.valueOf(PositionProtoMapper.toScaled(p.getAvgPrice())));
+            args.add(String.valueOf(p.getVersion()));
+        }
+        redis.execute(RedisLuaScripts.CLIENT_AGGREGATE_BOOTSTRAP, List.of(key), args.toArray());
+    }
+
+    /**
+     * Same totals computed in memory, for when Redis is unavailable.
+     */
+    public static Totals compute(List<PositionResponse> positions) {
+        long qty = 0;
+        BigDecimal cost = BigDecimal.ZERO.setScale(PositionProtoMapper.PRICE_SCALE);
+        for (PositionResponse p : positions) {
+            qty += p.getQuantity();
+            cost = cost.add(BigDecimal.valueOf(p.getQuantity()).multiply(p.getAvgPrice()));
+        }
+        return new Totals(positions.size(), qty, cost.setScale(PositionProtoMapper.PRICE_SCALE, RoundingMode.HALF_UP));
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}
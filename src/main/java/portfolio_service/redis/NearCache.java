@@ -0,0 +1,120 @@
+package portfolio_service.redis;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * In-process L1 in front of {@link RedisBytesCache}.
+ * Entries are keyed by the Redis key itself (so tenant namespaces match {@link RedisKeys})
+ * and hold already decoded objects, so a hit skips both the network hop and the proto decode.
+ * Invalidations are broadcast to the other instances over a Redis pub/sub channel.
+ */
+@Component
+public class NearCache implements MessageListener {
+
+    private static final String ENV = "prod";
+
+    // a known-missing key, see putAbsent
+    private static final Object TOMBSTONE = new Object();
+
+    private final StringRedisTemplate redis;
+    private final boolean enabled;
+    private final Cache<String, Entry> cache;
+
+    public NearCache(StringRedisTemplate redis,
+                     @Value("${app.cache.near.enabled:true}") boolean enabled,
+                     @Value("${app.cache.near.max-size:10000}") long maxSize) {
+        this.redis = redis;
+        this.enabled = enabled;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new EntryExpiry())
+                .build();
+    }
+
+    /**
+     * @return the cached value, or null on miss (values are shared, treat them as read-only)
+     */
+    public <T> T get(String key) {
+        return getOrAbsent(key, null);
+    }
+
+    /**
+     * Like get, but returns absent (instead of null) if the key was stored with {@link #putAbsent}.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T getOrAbsent(String key, T absent) {
+        if (!enabled) return null;
+        Entry e = cache.getIfPresent(key);
+        if (e == null) return null;
+        return e.value() == TOMBSTONE ? absent : (T) e.value();
+    }
+
+    public void put(String key, Object value, Duration l2Ttl) {
+        if (!enabled || value == null) return;
+        cache.put(key, new Entry(value, cappedTtl(l2Ttl).toNanos()));
+    }
+
+    /**
+     * Remembers that key has no value (e.g. an unknown id). get returns null for it, as for a miss.
+     */
+    public void putAbsent(String key, Duration l2Ttl) {
+        if (!enabled) return;
+        cache.put(key, new Entry(TOMBSTONE, cappedTtl(l2Ttl).toNanos()));
+    }
+
+    /**
+     * Drops the keys locally and tells every other instance to do the same.
+     */
+    public void invalidate(Collection<String> keys) {
+        if (!enabled || keys.isEmpty()) return;
+        invalidateLocal(keys);
+        try {
+            redis.convertAndSend(RedisKeys.nearCacheInvalidationChannel(ENV), String.join("\n", keys));
+        } catch (Exception ignoreFailOpen) {}
+    }
+
+    public void invalidateLocal(Collection<String> keys) {
+        cache.invalidateAll(keys);
+    }
+
+    private static Duration cappedTtl(Duration l2Ttl) {
+        return l2Ttl.compareTo(CacheTtl.nearCacheTtl()) < 0 ? l2Ttl : CacheTtl.nearCacheTtl();
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        invalidateLocal(Arrays.asList(body.split("\n")));
+    }
+
+    private record Entry(Object value, long ttlNanos) {}
+
+    private static final class EntryExpiry implements Expiry<String, Entry> {
+        @Override
+        public long expireAfterCreate(String key, Entry value, long currentTime) {
+            return value.ttlNanos();
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, Entry value, long currentTime, long currentDuration) {
+            return value.ttlNanos();
+        }
+
+        @Override
+        public long expireAfterRead(String key, Entry value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package portfolio_service.redis;
+
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import portfolio_service.dto.PositionResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * Write-through mode: instead of deleting the cached position and client list on a write,
+ * push the fresh state into Redis once the transaction has committed.
+ * Every write carries the row version (@Version) so an older write can never overwrite a newer one.
+ * Invalidation mode uses {@link #fenceAfterCommit} for the same guarantee on deletes.
+ */
+@Component
+@RequiredArgsConstructor
+public class PositionCacheRefresher {
+
+    private static final Logger log = LoggerFactory.getLogger(PositionCacheRefresher.class);
+
+    private static final int LIST_PATCH_ATTEMPTS = 3;
+
+    private final RedisBytesCache cache;
+    private final NearCache nearCache;
+    private final PositionCodec codec;
+
+    /**
+     * @param state evaluated after commit, so it sees what was actually flushed (e.g. @PreUpdate timestamps)
+     */
+    public void upsertAfterCommit(String positionKey, String versionKey, String listKey,
+                                  Supplier<PositionResponse> state) {
+        afterCommit(() -> {
+            PositionResponse resp = state.get();
+            try {
+                if (cache.setIfNewer(positionKey, versionKey, codec.toBytes(resp),
+                        resp.getVersion(), CacheTtl.positionTtlWithJitter())) {
+                    // its cost and expiry were the replaced value's; the next load writes them again
+                    cache.del(RedisKeys.refreshMeta(positionKey));
+                }
+            } catch (Exception e) {
+                fallbackDel(positionKey, versionKey, e);
+            }
+            patchList(listKey, bytes -> codec.listUpsert(bytes, resp));
+            nearCache.invalidate(List.of(positionKey, listKey));
+        });
+    }
+
+    /**
+     * @param version the version the delete stands for, i.e. the deleted row's version + 1
+     */
+    public void removeAfterCommit(String positionKey, String versionKey, String listKey, UUID id, long version) {
+        afterCommit(() -> {
+            try {
+                cache.delIfNewer(positionKey, versionKey, version, CacheTtl.versionTombstoneTtl());
+            } catch (Exception e) {
+                fallbackDel(positionKey, versionKey, e);
+            }
+            patchList(listKey, bytes -> codec.listRemove(bytes, id));
+            nearCache.invalidate(List.of(positionKey, listKey));
+        });
+    }
+
+    /**
+     * Deletes the cached positions after commit and leaves their versions behind, so a rebuild that
+     * read a row before this commit can no longer write the old copy back.
+     */
+    public void fenceAfterCommit(List<RedisBytesCache.Versioned> fences) {
+        if (fences.isEmpty()) return;
+        List<String> keys = new ArrayList<>(fences.size());
+        List<String> allKeys = new ArrayList<>(fences.size() * 2);
+        for (RedisBytesCache.Versioned f : fences) {
+            keys.add(f.key());
+            allKeys.add(f.key());
+            allKeys.add(f.versionKey());
+        }
+        afterCommit(() -> {
+            try {
+                cache.delAllIfNewer(fences, CacheTtl.versionTombstoneTtl());
+            } catch (Exception e) {
+                log.warn("Version fence failed, falling back to unlink. keys={}, reason={}", keys.size(), e.getMessage());
+                try { cache.unlinkAll(allKeys); } catch (Exception ignore) {}
+            }
+            nearCache.invalidate(keys);
+        });
+    }
+
+    // the version key goes too: left behind it would be older than the row and answer If-None-Match wrongly
+    private void fallbackDel(String positionKey, String versionKey, Exception cause) {
+        log.warn("Write-through failed, falling back to delete. key={}, reason={}", positionKey, cause.getMessage());
+        try { cache.unlinkAll(List.of(positionKey, versionKey)); } catch (Exception ignore) {}
+    }
+
+    private void patchList(String listKey, UnaryOperator<byte[]> patch) {
+        try {
+            // the stored ETag described the old list; If-None-Match does full reads until the list is rebuilt
+            if (cache.patch(listKey, RedisKeys.positionsByClientTag(listKey), patch,
+                    CacheTtl.clientListTtlWithJitter(), LIST_PATCH_ATTEMPTS)) return;
+            // too much contention on this list, let the next read rebuild it
+            cache.del(listKey);
+        } catch (Exception e) {
+            fallbackDel(listKey, e);
+        }
+    }
+
+    private void fallbackDel(String key, Exception cause) {
+        log.warn("Write-through failed, falling back to delete. key={}, reason={}", key, cause.getMessage());
+        try { cache.del(key); } catch (Exception ignore) {}
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
@@ -0,0 +1,51 @@
+package portfolio_service.redis;
+
+import portfolio_service.dto.PositionResponse;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * {@link PositionProtoMapper} bound to the configured write format (app.cache.proto-format, see CacheCodecConfig).
+ * Reads accept both formats whatever the setting.
+ */
+public final class PositionCodec {
+
+    private final PositionProtoMapper.Format writeFormat;
+    private final CacheCodec<PositionResponse> position;
+    private final CacheCodec<List<PositionResponse>> list;
+
+    public PositionCodec(PositionProtoMapper.Format writeFormat) {
+        this.writeFormat = writeFormat;
+        this.position = CacheCodec.of(this::toBytes, PositionProtoMapper::fromBytes);
+        this.list = CacheCodec.of(this::listToBytes, PositionProtoMapper::listFromBytes);
+    }
+
+    public PositionProtoMapper.Format writeFormat() {
+        return writeFormat;
+    }
+
+    public CacheCodec<PositionResponse> position() {
+        return position;
+    }
+
+    public CacheCodec<List<PositionResponse>> list() {
+        return list;
+    }
+
+    public byte[] toBytes(PositionResponse r) {
+        return PositionProtoMapper.toBytes(r, writeFormat);
+    }
+
+    public byte[] listToBytes(List<PositionResponse> items) {
+        return PositionProtoMapper.listToBytes(items, writeFormat);
+    }
+
+    public byte[] listUpsert(byte[] listBytes, PositionResponse r) {
+        return PositionProtoMapper.listUpsert(listBytes, r, writeFormat);
+    }
+
+    public byte[] listRemove(byte[] listBytes, UUID id) {
+        return PositionProtoMapper.listRemove(listBytes, id, writeFormat);
+    }
+}
@@ -0,0 +1,95 @@
+package portfolio_service.redis;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import portfolio_service.proto.Position;
+import portfolio_service.proto.PositionList;
+import portfolio_service.proto.PositionListV2;
+import portfolio_service.proto.PositionV2;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Streams cached proto bytes (v1 or v2) straight to JSON, without building PositionResponse objects
+ * on the way. Output matches what Jackson writes for PositionResponse.
+ */
+public final class PositionJsonWriter {
+
+    private PositionJsonWriter() {}
+
+    public static void writePosition(byte[] bytes, JsonGenerator g) throws IOException {
+        if (PositionProtoMapper.isV2(bytes)) {
+            PositionV2 p = PositionV2.parser().parseFrom(bytes, 1, bytes.length - 1);
+            writeV2(p, p.getClientId(), p.getSymbol(), g);
+        } else {
+            writeV1(Position.parseFrom(bytes), g);
+        }
+    }
+
+    public static void writeList(byte[] bytes, JsonGenerator g) throws IOException {
+        g.writeStartArray();
+        if (PositionProtoMapper.isV2(bytes)) {
+            PositionListV2 pl = PositionListV2.parser().parseFrom(bytes, 1, bytes.length - 1);
+            List<String> symbols = pl.getSymbolsList();
+            for (PositionV2 p : pl.getItemsList()) {
+                String clientId = p.getClientId().isEmpty() ? pl.getClientId() : p.getClientId();
+                writeV2(p, clientId, symbols.get(p.getSymbolRef()), g);
+            }
+        } else if (bytes.length > 0) {
+            for (Position p : PositionList.parseFrom(bytes).getItemsList()) {
+                writeV1(p, g);
+            }
+        }
+        g.writeEndArray();
+    }
+
+    private static void writeV1(Position p, JsonGenerator g) throws IOException {
+        g.writeStartObject();
+        g.writeStringField("id", p.getId());
+        g.writeStringField("clientId", p.getClientId());
+        g.writeStringField("symbol", p.getSymbol());
+        g.writeNumberField("quantity", p.getQuantity());
+        g.writeFieldName("avgPrice");
+        g.writeNumber(scaledToPlain(p.getAvgPriceScaled()));
+        g.writeStringField("updatedAt", PositionProtoMapper.fromTimestamp(p.getUpdatedAt()).toString());
+        g.writeNumberField("version", p.getVersion());
+        g.writeEndObject();
+    }
+
+    private static void writeV2(PositionV2 p, String clientId, String symbol, JsonGenerator g) throws IOException {
+        UUID id = PositionProtoMapper.uuid(p.getId());
+        Instant updatedAt = PositionProtoMapper.fromMicros(p.getUpdatedAtMicros());
+
+        g.writeStartObject();
+        g.writeStringField("id", id == null ? null : id.toString());
+        g.writeStringField("clientId", clientId);
+        g.writeStringField("symbol", symbol);
+        g.writeNumberField("quantity", p.getQuantity());
+        g.writeFieldName("avgPrice");
+        g.writeNumber(scaledToPlain(p.getAvgPriceScaled()));
+        g.writeStringField("updatedAt", updatedAt.toString());
+        g.writeNumberField("version", p.getVersion());
+        g.writeEndObject();
+    }
+
+    // same text as BigDecimal.valueOf(scaled, PRICE_SCALE).toString() for the values we store
+    static String scaledToPlain(long scaled) {
+        int scale = PositionProtoMapper.PRICE_SCALE;
+        StringBuilder sb = new StringBuilder(24);
+        if (scaled < 0) {
+            sb.append('-');
+            scaled = -scaled;
+        }
+        String digits = Long.toString(scaled);
+        if (digits.length() <= scale) {
+            sb.append("0.");
+            for (int i = digits.length(); i < scale; i++) sb.append('0');
+            sb.append(digits);
+        } else {
+            sb.append(digits, 0, digits.length() - scale).append('.').append(digits, digits.length() - scale, digits.length());
+        }
+        return sb.toString();
+    }
+}
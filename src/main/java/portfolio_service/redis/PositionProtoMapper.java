@@ -1,114 +1,293 @@
 package portfolio_service.redis;
 
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.MessageLite;
 import com.google.protobuf.Timestamp;
+import com.google.protobuf.UnsafeByteOperations;
 import com.google.protobuf.util.Timestamps;
 import portfolio_service.dto.PositionResponse;
 import portfolio_service.proto.Position;
 import portfolio_service.proto.PositionList;
+import portfolio_service.proto.PositionListV2;
+import portfolio_service.proto.PositionV2;
 
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.nio.ByteBuffer;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.UUID;
 
+/**
+ * Cache codec for positions.
+ * <p>
+ * v1 is the plain {@code Position}/{@code PositionList} message. v2 is {@code PositionV2}/{@code PositionListV2}
+ * prefixed with {@link #FORMAT_V2}. A valid proto message can never start with that byte (it would be
+ * field number 0), so readers tell the two apart without any extra header and accept both.
+ * Writers pass the {@link Format} explicitly; the configured one (app.cache.proto-format) lives in
+ * {@link PositionCodec}. Keep it on v1 while instances that only read v1 are still running, then flip.
+ */
 public final class PositionProtoMapper {
 
-    private static final int PRICE_SCALE = 4;
+    public static final byte FORMAT_V2 = 0x02;
+
+    static final int PRICE_SCALE = 4;
+
+    public enum Format {
+        V1, V2;
+
+        public static Format of(String name) {
+            return "v2".equalsIgnoreCase(name.trim()) ? V2 : V1;
+        }
+    }
 
     private PositionProtoMapper() {}
 
-    public static byte[] toBytes(PositionResponse r) {
+    public static byte[] toBytes(PositionResponse r, Format format) {
         if (r == null) return null;
+        if (format == Format.V1) return toProto(r).toByteArray();
 
-        Position p = Position.newBuilder()
-                .setId(safeString(r.getId()))
-                .setClientId(nullSafe(r.getClientId()))
-                .setSymbol(nullSafe(r.getSymbol()))
-                .setQuantity(r.getQuantity())
-                .setAvgPriceScaled(toScaled(r.getAvgPrice()))
-                .setUpdatedAt(toTimestamp(r.getUpdatedAt()))
-                .build();
-
-        return p.toByteArray();
+        PositionV2 p = toProtoV2(r, true, 0).build();
+        return withFormatByte(p);
     }
 
     public static PositionResponse fromBytes(byte[] bytes) {
         if (bytes == null || bytes.length == 0) return null;
         try {
-            Position p = Position.parseFrom(bytes);
-
-            return PositionResponse.builder()
-                    .id(UUID.fromString(p.getId()))
-                    .clientId(p.getClientId())
-                    .symbol(p.getSymbol())
-                    .quantity(p.getQuantity())
-                    .avgPrice(fromScaled(p.getAvgPriceScaled()))
-                    .updatedAt(fromTimestamp(p.getUpdatedAt()))
-                    .build();
-
+            if (isV2(bytes)) {
+                PositionV2 p = PositionV2.parser().parseFrom(bytes, 1, bytes.length - 1);
+                return fromProtoV2(p, p.getClientId(), p.getSymbol());
+            }
+            return fromProto(Position.parseFrom(bytes));
         } catch (Exception e) {
             throw new IllegalStateException("Failed to parse Position proto", e);
         }
     }
 
-    public static byte[] listToBytes(List<PositionResponse> list) {
+    public static byte[] listToBytes(List<PositionResponse> list, Format format) {
         if (list == null) return null;
+        if (format == Format.V1) {
+            PositionList.Builder b = PositionList.newBuilder();
+            for (PositionResponse r : list) {
+                if (r == null) continue;
+                b.addItems(toProto(r));
+            }
+            return b.build().toByteArray();
+        }
 
-        PositionList.Builder b = PositionList.newBuilder();
+        String clientId = commonClientId(list);
+        PositionListV2.Builder b = PositionListV2.newBuilder().setClientId(nullSafe(clientId));
+        Map<String, Integer> symbolRefs = new HashMap<>();
         for (PositionResponse r : list) {
             if (r == null) continue;
-
-            b.addItems(Position.newBuilder()
-                    .setId(safeString(r.getId()))
-                    .setClientId(nullSafe(r.getClientId()))
-                    .setSymbol(nullSafe(r.getSymbol()))
-                    .setQuantity(r.getQuantity())
-                    .setAvgPriceScaled(toScaled(r.getAvgPrice()))
-                    .setUpdatedAt(toTimestamp(r.getUpdatedAt()))
-                    .build());
+            Integer ref = symbolRefs.get(nullSafe(r.getSymbol()));
+            if (ref == null) {
+                ref = symbolRefs.size();
+                symbolRefs.put(nullSafe(r.getSymbol()), ref);
+                b.addSymbols(nullSafe(r.getSymbol()));
+            }
+            PositionV2.Builder item = toProtoV2(r, false, ref);
+            // only when a caller mixes clients in one list, which the service never does
+            if (clientId == null) item.setClientId(nullSafe(r.getClientId()));
+            b.addItems(item);
         }
-        return b.build().toByteArray();
+        return withFormatByte(b.build());
     }
 
     public static List<PositionResponse> listFromBytes(byte[] bytes) {
         if (bytes == null || bytes.length == 0) return List.of();
         try {
-            PositionList pl = PositionList.parseFrom(bytes);
-
-            return pl.getItemsList().stream()
-                    .map(p -> PositionResponse.builder()
-                            .id(UUID.fromString(p.getId()))
-                            .clientId(p.getClientId())
-                            .symbol(p.getSymbol())
-                            .quantity(p.getQuantity())
-                            .avgPrice(fromScaled(p.getAvgPriceScaled()))
-                            .updatedAt(fromTimestamp(p.getUpdatedAt()))
-                            .build())
-                    .toList();
+            if (isV2(bytes)) {
+                PositionListV2 pl = PositionListV2.parser().parseFrom(bytes, 1, bytes.length - 1);
+                List<String> symbols = pl.getSymbolsList();
+                List<PositionResponse> out = new ArrayList<>(pl.getItemsCount());
+                for (PositionV2 p : pl.getItemsList()) {
+                    String clientId = p.getClientId().isEmpty() ? pl.getClientId() : p.getClientId();
+                    out.add(fromProtoV2(p, clientId, symbols.get(p.getSymbolRef())));
+                }
+                return Collections.unmodifiableList(out);
+            }
 
+            List<Position> items = PositionList.parseFrom(bytes).getItemsList();
+            List<PositionResponse> out = new ArrayList<>(items.size());
+            for (Position p : items) out.add(fromProto(p));
+            return Collections.unmodifiableList(out);
         } catch (Exception e) {
             throw new IllegalStateException("Failed to parse PositionList proto", e);
         }
     }
 
-    private static long toScaled(BigDecimal price) {
+    /**
+     * Replaces (or appends) r inside an encoded list, in whatever format it was stored.
+     * The result is written in format.
+     * @return the new list bytes, or null if the list already holds a newer copy of that position
+     */
+    public static byte[] listUpsert(byte[] listBytes, PositionResponse r, Format format) {
+        List<PositionResponse> items = new ArrayList<>(listFromBytes(listBytes));
+        for (int i = 0; i < items.size(); i++) {
+            PositionResponse current = items.get(i);
+            if (!Objects.equals(current.getId(), r.getId())) continue;
+
+            if (isNewer(current, r)) return null;
+            items.set(i, r);
+            return listToBytes(items, format);
+        }
+        items.add(r);
+        return listToBytes(items, format);
+    }
+
+    /**
+     * @return the list bytes without that position, or null if it wasn't there
+     */
+    public static byte[] listRemove(byte[] listBytes, UUID id, Format format) {
+        List<PositionResponse> items = new ArrayList<>(listFromBytes(listBytes));
+        if (!items.removeIf(p -> Objects.equals(p.getId(), id))) return null;
+        return listToBytes(items, format);
+    }
+
+    /**
+     * Version of an encoded single position, read without building a PositionResponse.
+     */
+    public static long versionOf(byte[] bytes) {
+        try {
+            if (isV2(bytes)) return PositionV2.parser().parseFrom(bytes, 1, bytes.length - 1).getVersion();
+            return Position.parseFrom(bytes).getVersion();
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to parse Position proto", e);
+        }
+    }
+
+    public static boolean isV2(byte[] bytes) {
+        return bytes.length > 0 && bytes[0] == FORMAT_V2;
+    }
+
+    private static byte[] withFormatByte(MessageLite msg) {
+        int size = msg.getSerializedSize();
+        byte[] out = new byte[size + 1];
+        out[0] = FORMAT_V2;
+        try {
+            CodedOutputStream cos = CodedOutputStream.newInstance(out, 1, size);
+            msg.writeTo(cos);
+            cos.checkNoSpaceLeft();
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to serialize " + msg.getClass().getSimpleName(), e);
+        }
+        return out;
+    }
+
+    private static String commonClientId(List<PositionResponse> list) {
+        String clientId = null;
+        for (PositionResponse r : list) {
+            if (r == null) continue;
+            if (clientId == null) clientId = nullSafe(r.getClientId());
+            else if (!clientId.equals(nullSafe(r.getClientId()))) return null;
+        }
+        return clientId == null ? "" : clientId;
+    }
+
+    private static boolean isNewer(PositionResponse current, PositionResponse incoming) {
+        if (current.getVersion() != incoming.getVersion()) return current.getVersion() > incoming.getVersion();
+        if (current.getUpdatedAt() == null || incoming.getUpdatedAt() == null) return false;
+        return current.getUpdatedAt().isAfter(incoming.getUpdatedAt());
+    }
+
+    private static Position toProto(PositionResponse r) {
+        return Position.newBuilder()
+                .setId(safeString(r.getId()))
+                .setClientId(nullSafe(r.getClientId()))
+                .setSymbol(nullSafe(r.getSymbol()))
+                .setQuantity(r.getQuantity())
+                .setAvgPriceScaled(toScaled(r.getAvgPrice()))
+                .setUpdatedAt(toTimestamp(r.getUpdatedAt()))
+                .setVersion(r.getVersion())
+                .build();
+    }
+
+    private static PositionResponse fromProto(Position p) {
+        return PositionResponse.builder()
+                .id(UUID.fromString(p.getId()))
+                .clientId(p.getClientId())
+                .symbol(p.getSymbol())
+                .quantity(p.getQuantity())
+                .avgPrice(fromScaled(p.getAvgPriceScaled()))
+                .updatedAt(fromTimestamp(p.getUpdatedAt()))
+                .version(p.getVersion())
+                .build();
+    }
+
+    private static PositionV2.Builder toProtoV2(PositionResponse r, boolean standalone, int symbolRef) {
+        PositionV2.Builder b = PositionV2.newBuilder()
+                .setId(uuidBytes(r.getId()))
+                .setQuantity(r.getQuantity())
+                .setAvgPriceScaled(toScaled(r.getAvgPrice()))
+                .setUpdatedAtMicros(toMicros(r.getUpdatedAt()))
+                .setVersion(r.getVersion());
+        if (standalone) {
+            b.setClientId(nullSafe(r.getClientId())).setSymbol(nullSafe(r.getSymbol()));
+        } else {
+            b.setSymbolRef(symbolRef);
+        }
+        return b;
+    }
+
+    private static PositionResponse fromProtoV2(PositionV2 p, String clientId, String symbol) {
+        return PositionResponse.builder()
+                .id(uuid(p.getId()))
+                .clientId(clientId)
+                .symbol(symbol)
+                .quantity(p.getQuantity())
+                .avgPrice(fromScaled(p.getAvgPriceScaled()))
+                .updatedAt(fromMicros(p.getUpdatedAtMicros()))
+                .version(p.getVersion())
+                .build();
+    }
+
+    public static ByteString uuidBytes(UUID id) {
+        if (id == null) return ByteString.EMPTY;
+        byte[] b = new byte[16];
+        ByteBuffer.wrap(b).putLong(id.getMostSignificantBits()).putLong(id.getLeastSignificantBits());
+        return UnsafeByteOperations.unsafeWrap(b);
+    }
+
+    public static UUID uuid(ByteString bytes) {
+        if (bytes.size() != 16) return null;
+        ByteBuffer buf = bytes.asReadOnlyByteBuffer();
+        return new UUID(buf.getLong(), buf.getLong());
+    }
+
+    public static long toScaled(BigDecimal price) {
         if (price == null) return 0L;
-        return price.movePointRight(PRICE_SCALE)
-                .setScale(0, RoundingMode.HALF_UP)
+        return price.setScale(PRICE_SCALE, RoundingMode.HALF_UP)
+                .unscaledValue()
                 .longValueExact();
     }
 
-    private static BigDecimal fromScaled(long scaled) {
+    public static BigDecimal fromScaled(long scaled) {
         return BigDecimal.valueOf(scaled, PRICE_SCALE);
     }
 
+    public static long toMicros(Instant i) {
+        if (i == null) return 0L;
+        return i.getEpochSecond() * 1_000_000L + i.getNano() / 1_000;
+    }
+
+    public static Instant fromMicros(long micros) {
+        return Instant.ofEpochSecond(Math.floorDiv(micros, 1_000_000L), Math.floorMod(micros, 1_000_000L) * 1_000L);
+    }
+
     private static Timestamp toTimestamp(Instant i) {
         if (i == null) i = Instant.EPOCH;
         return Timestamps.fromMillis(i.toEpochMilli());
     }
 
-    private static Instant fromTimestamp(Timestamp ts) {
+    static Instant fromTimestamp(Timestamp ts) {
         if (ts == null) return Instant.EPOCH;
         return Instant.ofEpochSecond(ts.getSeconds(), ts.getNanos());
     }
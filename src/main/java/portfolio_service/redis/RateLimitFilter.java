@@ -20,16 +20,15 @@ import java.io.IOException;
 public class RateLimitFilter extends OncePerRequestFilter {
 
     private static final String ENV = "prod";
-    private static final int WINDOW_SEC = 10;
-    private static final long LIMIT = 5;
+    private static final String BATCH_GET_PATH = "/positions:batchGet";
 
     private final RateLimiter rateLimiter;
+    private final RateLimitProperties properties;
 
     @Override
     protected boolean shouldNotFilter(HttpServletRequest request) {
-        if (!"GET".equalsIgnoreCase(request.getMethod())) return true;
-        String path = request.getRequestURI();
-        return !path.startsWith("/positions/");
+        String endpoint = endpoint(request);
+        return endpoint == null || properties.policyFor(TenantContext.get(), endpoint) == null;
     }
 
     @Override
@@ -39,12 +38,13 @@ public class RateLimitFilter extends OncePerRequestFilter {
         String clientId = req.getHeader("X-Client-Id");
         if (clientId == null || clientId.isBlank()) clientId = "anonymous";
 
+        String endpoint = endpoint(req);
+        RateLimitProperties.Policy policy = properties.policyFor(TenantContext.get(), endpoint);
         String tenantNs = "asset:" + TenantContext.get();
-        long windowStart = RateLimiter.windowStartSec(WINDOW_SEC);
 
-        String key = RedisKeys.rateLimitKey(ENV, tenantNs, clientId.trim(), "getPosition", windowStart);
+        String key = RedisKeys.rateLimitKey(ENV, tenantNs, clientId.trim(), endpoint);
 
-        boolean allowed = rateLimiter.allow(key, WINDOW_SEC, LIMIT);
+        boolean allowed = rateLimiter.allow(key, policy);
 
         if (!allowed) {
             res.setStatus(429);
@@ -55,4 +55,13 @@ public class RateLimitFilter extends OncePerRequestFilter {
 
         chain.doFilter(req, res);
     }
+
+    // a batch call is charged once, that's the point of batching
+    private static String endpoint(HttpServletRequest req) {
+        String path = req.getRequestURI();
+        if ("GET".equalsIgnoreCase(req.getMethod()) && path.startsWith("/positions/")) return "getPosition";
+        if ("POST".equalsIgnoreCase(req.getMethod()) && path.equals(BATCH_GET_PATH)) return "batchGetPositions";
+        if ("GET".equalsIgnoreCase(req.getMethod()) && path.startsWith("/clients/") && path.endsWith("/positions")) return "listPositions";
+        return null;
+    }
 }
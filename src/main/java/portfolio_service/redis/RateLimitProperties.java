@@ -0,0 +1,63 @@
+package portfolio_service.redis;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Rate limit policies per endpoint, with optional per-tenant overrides:
+ * <pre>
+ * app.rate-limit.endpoints.getPosition.limit=5
+ * app.rate-limit.tenants.t1.getPosition.limit=500
+ * </pre>
+ * Endpoints without a policy are not limited.
+ * <p>
+ * Token-bucket policies lease about 100 ms worth of one instance's share of the rate per Redis call
+ * (limit / window / instances), so leasing only starts once that share is 20 requests per second or more;
+ * below that every request is one Redis call, which at that rate costs nothing.
+ */
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "app.rate-limit")
+public class RateLimitProperties {
+
+    private Map<String, Policy> endpoints = new HashMap<>();
+    private Map<String, Map<String, Policy>> tenants = new HashMap<>();
+    // instances sharing the limits; sizes the token-bucket leases so no instance holds more than its share
+    private int instances = 1;
+
+    public Policy policyFor(String tenant, String endpoint) {
+        Map<String, Policy> overrides = tenants.get(tenant);
+        if (overrides != null && overrides.containsKey(endpoint)) return overrides.get(endpoint);
+        return endpoints.get(endpoint);
+    }
+
+    public enum Algorithm {
+        FIXED_WINDOW,
+        SLIDING_LOG,
+        TOKEN_BUCKET
+    }
+
+    @Getter
+    @Setter
+    public static class Policy {
+        private Algorithm algorithm = Algorithm.TOKEN_BUCKET;
+        private long limit = 5;
+        private Duration window = Duration.ofSeconds(10);
+        // token bucket only: tokens taken from Redis per round trip, 0 = derive from rate and instance count
+        private int leaseSize = 0;
+
+        public int effectiveLeaseSize(int instances) {
+            if (leaseSize > 0) return leaseSize;
+            double perInstancePerSecond = limit * 1000.0 / Math.max(1, window.toMillis()) / Math.max(1, instances);
+            // 1 = no lease: every request asks Redis
+            return (int) Math.max(1, Math.min(Math.min(100, limit), perInstancePerSecond / 10));
+        }
+    }
+}
@@ -1,12 +1,17 @@
 package portfolio_service.redis;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
 import java.time.Instant;
 import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Component
 @RequiredArgsConstructor
@@ -19,19 +24,117 @@ public class RateLimiter {
             Long.class
     );
 
+    // ARGV[1]=window ms, ARGV[2]=limit, ARGV[3]=unique member; scores are Redis server time in ms
+    private static final DefaultRedisScript<Long> SLIDING_LOG_SCRIPT = new DefaultRedisScript<>(
+            "local t=redis.call('TIME'); " +
+                    "local now=tonumber(t[1])*1000+math.floor(tonumber(t[2])/1000); " +
+                    "redis.call('ZREMRANGEBYSCORE', KEYS[1], '-inf', now-tonumber(ARGV[1])); " +
+                    "if redis.call('ZCARD', KEYS[1]) >= tonumber(ARGV[2]) then return 0; end; " +
+                    "redis.call('ZADD', KEYS[1], now, ARGV[3]); " +
+                    "redis.call('PEXPIRE', KEYS[1], ARGV[1]); " +
+                    "return 1;",
+            Long.class
+    );
+
+    // ARGV[1]=capacity, ARGV[2]=refill tokens per ms, ARGV[3]=tokens wanted, ARGV[4]=key ttl ms
+    // returns how many tokens were granted (0..wanted)
+    private static final DefaultRedisScript<Long> TOKEN_BUCKET_SCRIPT = new DefaultRedisScript<>(
+            "local t=redis.call('TIME'); " +
+                    "local now=tonumber(t[1])*1000+math.floor(tonumber(t[2])/1000); " +
+                    "local cap=tonumber(ARGV[1]); " +
+                    "local b=redis.call('HMGET', KEYS[1], 'tokens', 'ts'); " +
+                    "local tokens=tonumber(b[1]) or cap; " +
+                    "local ts=tonumber(b[2]) or now; " +
+                    "tokens=math.min(cap, tokens+math.max(0, now-ts)*tonumber(ARGV[2])); " +
+                    "local granted=math.min(math.floor(tokens), tonumber(ARGV[3])); " +
+                    "tokens=tokens-granted; " +
+                    "redis.call('HSET', KEYS[1], 'tokens', tostring(tokens), 'ts', tostring(now)); " +
+                    "redis.call('PEXPIRE', KEYS[1], ARGV[4]); " +
+                    "return granted;",
+            Long.class
+    );
+
     private final StringRedisTemplate redis;
+    private final RateLimitProperties properties;
+
+    // tokens leased from Redis and spent locally, so most requests never leave the JVM
+    private final Cache<String, Lease> leases = Caffeine.newBuilder()
+            .maximumSize(100_000)
+            .expireAfterWrite(Duration.ofMinutes(1))
+            .build();
 
     /**
+     * Fails open: if Redis can't answer, the request is allowed.
      * @return true if allowed, false if limited
      */
-    public boolean allow(String key, int windowSeconds, long limit) {
+    public boolean allow(String baseKey, RateLimitProperties.Policy policy) {
+        try {
+            return switch (policy.getAlgorithm()) {
+                case FIXED_WINDOW -> fixedWindow(baseKey, policy);
+                case SLIDING_LOG -> slidingLog(baseKey, policy);
+                case TOKEN_BUCKET -> tokenBucket(baseKey, policy);
+            };
+        } catch (Exception ignoreFailOpen) {
+            return true;
+        }
+    }
+
+    private boolean fixedWindow(String baseKey, RateLimitProperties.Policy policy) {
+        int windowSeconds = (int) Math.max(1, policy.getWindow().toSeconds());
+        String key = baseKey + ":" + windowStartSec(windowSeconds);
         Long c = redis.execute(FIXED_WINDOW_SCRIPT, List.of(key), String.valueOf(windowSeconds));
         if (c == null) return true;
-        return c <= limit;
+        return c <= policy.getLimit();
+    }
+
+    private boolean slidingLog(String baseKey, RateLimitProperties.Policy policy) {
+        Long ok = redis.execute(SLIDING_LOG_SCRIPT, List.of(baseKey + ":log"),
+                String.valueOf(policy.getWindow().toMillis()),
+                String.valueOf(policy.getLimit()),
+                UUID.randomUUID().toString());
+        return ok == null || ok == 1L;
+    }
+
+    private boolean tokenBucket(String baseKey, RateLimitProperties.Policy policy) {
+        String key = baseKey + ":tb";
+        Lease lease = leases.getIfPresent(key);
+        if (lease != null && lease.tryTake()) return true;
+
+        long windowMs = Math.max(1, policy.getWindow().toMillis());
+        double refillPerMs = (double) policy.getLimit() / windowMs;
+        Long granted = redis.execute(TOKEN_BUCKET_SCRIPT, List.of(key),
+                String.valueOf(policy.getLimit()),
+                String.valueOf(refillPerMs),
+                String.valueOf(policy.effectiveLeaseSize(properties.getInstances())),
+                String.valueOf(windowMs * 2));
+        if (granted == null) return true;
+        if (granted <= 0) return false;
+
+        if (granted > 1) {
+            // hold leftovers only as long as Redis would need to refill them
+            long ttlNanos = Duration.ofMillis(windowMs).toNanos() / policy.getLimit() * granted;
+            leases.put(key, new Lease(granted - 1, System.nanoTime() + ttlNanos));
+        }
+        return true;
     }
 
     public static long windowStartSec(int windowSeconds) {
         long now = Instant.now().getEpochSecond();
         return (now / windowSeconds) * windowSeconds;
     }
+
+    private static final class Lease {
+        private final AtomicLong remaining;
+        private final long expiresAtNanos;
+
+        Lease(long tokens, long expiresAtNanos) {
+            this.remaining = new AtomicLong(tokens);
+            this.expiresAtNanos = expiresAtNanos;
+        }
+
+        boolean tryTake() {
+            if (System.nanoTime() - expiresAtNanos > 0) return false;
+            return remaining.getAndUpdate(n -> n > 0 ? n - 1 : n) > 0;
+        }
+    }
 }
@@ -1,31 +1,204 @@
 package portfolio_service.redis;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
 import org.springframework.stereotype.Component;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
 
+/**
+ * Binary values in Redis. Reads of keys under a tenant's :cache: prefix go through {@link RedisTrackingCache}
+ * when client tracking is on; every write drops the local copies of the keys it touched right away,
+ * so this instance reads its own writes without waiting for the server's invalidation push.
+ */
 @Component
 @RequiredArgsConstructor
 public class RedisBytesCache {
 
+    private static final byte[] SET_IF_NEWER_SCRIPT = RedisLuaScripts.SET_IF_NEWER.getScriptAsString().getBytes(StandardCharsets.UTF_8);
+    private static final byte[] DEL_IF_NEWER_SCRIPT = RedisLuaScripts.DEL_IF_NEWER.getScriptAsString().getBytes(StandardCharsets.UTF_8);
+
     private final RedisTemplate<String, byte[]> redis;
+    private final RedisTrackingCache tracking;
+
+    /**
+     * A cache entry guarded by its version key. value is ignored by {@link #delAllIfNewer}.
+     */
+    public record Versioned(String key, String versionKey, long version, byte[] value) {}
 
     public byte[] get(String key) {
-        return redis.opsForValue().get(key);
+        return tracking.get(key, k -> redis.opsForValue().get(k));
     }
 
     public void set(String key, byte[] value, Duration ttl) {
         redis.opsForValue().set(key, value, ttl);
+        tracking.invalidate(key);
     }
 
     public void del(String key) {
         redis.delete(key);
+        tracking.invalidate(key);
+    }
+
+    /**
+     * One UNLINK for all keys: a single round trip, and the memory is reclaimed off Redis' main thread.
+     */
+    public void unlinkAll(Collection<String> keys) {
+        if (keys.isEmpty()) return;
+        redis.unlink(keys);
+        tracking.invalidate(keys);
+    }
+
+    /**
+     * Single MGET; the result has the same size and order as keys, with null for misses.
+     */
+    public List<byte[]> mget(List<String> keys) {
+        if (keys.isEmpty()) return List.of();
+        return tracking.getAll(keys, remote -> {
+            List<byte[]> values = redis.opsForValue().multiGet(remote);
+            return values != null ? values : Collections.nCopies(remote.size(), null);
+        });
+    }
+
+    /**
+     * Writes value + version atomically unless the stored version is already higher.
+     * @return false if refused because a newer version is cached
+     */
+    public boolean setIfNewer(String key, String versionKey, byte[] value, long version, Duration ttl) {
+        Long r = redis.execute(RedisLuaScripts.SET_IF_NEWER, List.of(key, versionKey),
+                value, ascii(version), ascii(ttl.toMillis()));
+        tracking.invalidate(List.of(key, versionKey));
+        return r != null && r == 1L;
+    }
+
+    /**
+     * Writes value and a companion describing it (e.g. its ETag) atomically, with the same TTL.
+     * Read the companion back with {@link #getCompanion}.
+     */
+    public void setWithCompanion(String key, byte[] value, String companionKey, byte[] companion, Duration ttl) {
+        redis.execute(RedisLuaScripts.SET_WITH_COMPANION, List.of(key, companionKey), value, companion, ascii(ttl.toMillis()));
+        tracking.invalidate(List.of(key, companionKey));
+    }
+
+    /**
+     * The companion of key, or null if either is missing. Doesn't read the value itself.
+     */
+    public byte[] getCompanion(String companionKey, String key) {
+        return redis.execute(RedisLuaScripts.GET_COMPANION, List.of(companionKey, key));
+    }
+
+    /**
+     * Deletes the value and leaves the version behind as a tombstone, unless a newer version is cached.
+     */
+    public boolean delIfNewer(String key, String versionKey, long version, Duration tombstoneTtl) {
+        Long r = redis.execute(RedisLuaScripts.DEL_IF_NEWER, List.of(key, versionKey),
+                ascii(version), ascii(tombstoneTtl.toMillis()));
+        tracking.invalidate(List.of(key, versionKey));
+        return r != null && r == 1L;
+    }
+
+    /**
+     * {@link #setIfNewer} for every entry, in one pipelined round trip.
+     */
+    public void setAllIfNewer(List<Versioned> entries, Supplier<Duration> ttl) {
+        if (entries.isEmpty()) return;
+        redis.executePipelined((RedisCallback<Object>) connection -> {
+            for (Versioned e : entries) {
+                connection.scriptingCommands().eval(SET_IF_NEWER_SCRIPT, ReturnType.INTEGER, 2,
+                        e.key().getBytes(StandardCharsets.UTF_8),
+                        e.versionKey().getBytes(StandardCharsets.UTF_8),
+                        e.value(),
+                        ascii(e.version()),
+                        ascii(ttl.get().toMillis()));
+            }
+            return null;
+        });
+        invalidateLocal(entries);
+    }
+
+    /**
+     * {@link #delIfNewer} for every entry, in one pipelined round trip.
+     */
+    public void delAllIfNewer(List<Versioned> entries, Duration tombstoneTtl) {
+        if (entries.isEmpty()) return;
+        byte[] ttl = ascii(tombstoneTtl.toMillis());
+        redis.executePipelined((RedisCallback<Object>) connection -> {
+            for (Versioned e : entries) {
+                connection.scriptingCommands().eval(DEL_IF_NEWER_SCRIPT, ReturnType.INTEGER, 2,
+                        e.key().getBytes(StandardCharsets.UTF_8),
+                        e.versionKey().getBytes(StandardCharsets.UTF_8),
+                        ascii(e.version()),
+                        ttl);
+            }
+            return null;
+        });
+        invalidateLocal(entries);
+    }
+
+    /**
+     * Optimistic read-modify-write with WATCH/MULTI/EXEC. The patch receives the current value and
+     * returns the new one, or null to leave it as is. A missing key is never created.
+     * @param staleKey deleted in the same transaction when the value changes, e.g. a companion that
+     *                 described the old value; may be null
+     * @return false if the key kept changing underneath for every attempt
+     */
+    public boolean patch(String key, String staleKey, UnaryOperator<byte[]> patch, Duration ttl, int attempts) {
+        for (int i = 0; i < attempts; i++) {
+            Boolean done = redis.execute(new SessionCallback<Boolean>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public <K, V> Boolean execute(RedisOperations<K, V> operations) {
+                    RedisOperations<String, byte[]> ops = (RedisOperations<String, byte[]>) operations;
+                    ops.watch(key);
+                    byte[] current = ops.opsForValue().get(key);
+                    byte[] next = current == null ? null : patch.apply(current);
+                    if (next == null) {
+                        ops.unwatch();
+                        return true;
+                    }
+                    ops.multi();
+                    ops.opsForValue().set(key, next, ttl);
+                    if (staleKey != null) ops.delete(staleKey);
+                    List<Object> results = ops.exec();
+                    return results != null && !results.isEmpty();
+                }
+            });
+            if (Boolean.TRUE.equals(done)) {
+                tracking.invalidate(key);
+                if (staleKey != null) tracking.invalidate(staleKey);
+                return true;
+            }
+        }
+        return false;
     }
 
     public boolean setIfAbsent(String key, byte[] value, Duration ttl) {
         Boolean ok = redis.opsForValue().setIfAbsent(key, value, ttl);
+        tracking.invalidate(key);
         return Boolean.TRUE.equals(ok);
     }
+
+    private void invalidateLocal(List<Versioned> entries) {
+        List<String> keys = new ArrayList<>(entries.size() * 2);
+        for (Versioned e : entries) {
+            keys.add(e.key());
+            keys.add(e.versionKey());
+        }
+        tracking.invalidate(keys);
+    }
+
+    private static byte[] ascii(long n) {
+        return Long.toString(n).getBytes(StandardCharsets.US_ASCII);
+    }
 }
@@ -7,12 +7,49 @@ public final class RedisKeys {
         return env + ":" + tenant + ":cache:position:" + id;
     }
 
+    // row version (@Version) of the cached position
+    public static String positionVersion(String env, String tenant, String id) {
+        return positionById(env, tenant, id) + ":ver";
+    }
+
+    // compute cost and logical expiry of a cached value, for probabilistic early refresh
+    public static String refreshMeta(String valueKey) {
+        return valueKey + ":xf";
+    }
+
     public static String positionsByClient(String env, String tenant, String clientId) {
         return env + ":" + tenant + ":cache:client:" + clientId + ":positions";
     }
 
-    public static String rateLimitKey(String env, String tenant, String clientId, String endpoint, long windowStartSec) {
-        return env + ":" + tenant + ":rl:" + clientId + ":" + endpoint + ":" + windowStartSec;
+    // ETag of the cached list, written in the same script as the list (see RedisBytesCache.setWithCompanion)
+    public static String positionsByClientTag(String listKey) {
+        return listKey + ":tag";
+    }
+
+    // deleting it moves readers to a new generation, so every cached page of the client is dropped at once
+    public static String positionsByClientGeneration(String env, String tenant, String clientId) {
+        return positionsByClient(env, tenant, clientId) + ":gen";
+    }
+
+    public static String positionsByClientPage(String env, String tenant, String clientId, String generation,
+                                               int limit, String cursor) {
+        return positionsByClient(env, tenant, clientId) + ":page:" + generation + ":" + limit + ":"
+                + (cursor == null ? "first" : cursor);
+    }
+
+    // not under :cache: on purpose: it is maintained from events, not filled on read misses.
+    // versions in it are the row @Version of each position
+    public static String clientAggregate(String env, String tenant, String clientId) {
+        return env + ":" + tenant + ":agg:client:" + clientId;
+    }
+
+    // deleted positions of an aggregate by when their tombstone may go
+    public static String clientAggregateTombstones(String aggregateKey) {
+        return aggregateKey + ":del";
+    }
+
+    public static String rateLimitKey(String env, String tenant, String clientId, String endpoint) {
+        return env + ":" + tenant + ":rl:" + clientId + ":" + endpoint;
     }
 
     public static String lockKey(String env, String tenant, String name) {
@@ -26,4 +63,17 @@ public final class RedisKeys {
         return env + ":" + tenantNs + ":lock:cache:positionsByClient:" + clientId;
     }
 
+    public static String nearCacheInvalidationChannel(String env) {
+        return env + ":channel:near-cache:invalidate";
+    }
+
+    public static String cacheFilledChannel(String env) {
+        return env + ":channel:cache:filled";
+    }
+
+    // ids are global (not per tenant), so one channel for all tenants
+    public static String positionIdsCreatedChannel(String env) {
+        return env + ":channel:position-ids:created";
+    }
+
 }
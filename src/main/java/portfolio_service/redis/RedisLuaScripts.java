@@ -14,4 +14,116 @@ public final class RedisLuaScripts {
                             "end",
                     Long.class
             );
+
+    // KEYS[1]=value, KEYS[2]=version; ARGV[1]=value, ARGV[2]=version, ARGV[3]=ttl ms
+    public static final DefaultRedisScript<Long> SET_IF_NEWER =
+            new DefaultRedisScript<>(
+                    "local cur = redis.call('GET', KEYS[2]) " +
+                            "if cur and tonumber(cur) > tonumber(ARGV[2]) then return 0 end " +
+                            "redis.call('SET', KEYS[1], ARGV[1], 'PX', ARGV[3]) " +
+                            "redis.call('SET', KEYS[2], ARGV[2], 'PX', ARGV[3]) " +
+                            "return 1",
+                    Long.class
+            );
+
+    // KEYS[1]=value, KEYS[2]=companion; ARGV[1]=value, ARGV[2]=companion, ARGV[3]=ttl ms
+    public static final DefaultRedisScript<Long> SET_WITH_COMPANION =
+            new DefaultRedisScript<>(
+                    "redis.call('SET', KEYS[1], ARGV[1], 'PX', ARGV[3]) " +
+                            "redis.call('SET', KEYS[2], ARGV[2], 'PX', ARGV[3]) " +
+                            "return 1",
+                    Long.class
+            );
+
+    // KEYS[1]=companion, KEYS[2]=value; the companion, but only while the value it describes is there
+    public static final DefaultRedisScript<byte[]> GET_COMPANION =
+            new DefaultRedisScript<>(
+                    "if redis.call('EXISTS', KEYS[2]) == 0 then return false end " +
+                            "return redis.call('GET', KEYS[1])",
+                    byte[].class
+            );
+
+    // KEYS[1]=value, KEYS[2]=version; ARGV[1]=version, ARGV[2]=tombstone ttl ms
+    public static final DefaultRedisScript<Long> DEL_IF_NEWER =
+            new DefaultRedisScript<>(
+                    "local cur = redis.call('GET', KEYS[2]) " +
+                            "if cur and tonumber(cur) > tonumber(ARGV[1]) then return 0 end " +
+                            "redis.call('DEL', KEYS[1]) " +
+                            "redis.call('SET', KEYS[2], ARGV[1], 'PX', ARGV[2]) " +
+                            "return 1",
+                    Long.class
+            );
+
+    // Client aggregate hash: per position field p:<id> = "L|qty|priceScaled|version" (L live, D deleted),
+    // running totals count/qty/cost (cost = sum qty * priceScaled) once the hash is "ready".
+    // version is the row @Version; a delete carries the next one. Lua numbers are doubles: exact up to 2^53,
+    // i.e. cost below ~9e11 in price units per client.
+    // The expiry is set once (bootstrap, or the first change to a missing hash) and never pushed out, so the
+    // TTL still bounds drift for clients that change all the time. D entries are dropped once their
+    // tombstone TTL is up, a few per call, through the KEYS[2] index (score = when they may go).
+
+    // KEYS[1]=hash, KEYS[2]=tombstone index; ARGV[1]=position id, ARGV[2]=L|D, ARGV[3]=qty, ARGV[4]=price scaled,
+    // ARGV[5]=version, ARGV[6]=ttl ms, ARGV[7]=tombstone ttl ms
+    public static final String CLIENT_AGGREGATE_APPLY =
+            "local f = 'p:' .. ARGV[1] " +
+                    "local cur = redis.call('HGET', KEYS[1], f) " +
+                    "local live, oldQ, oldP = false, 0, 0 " +
+                    "if cur then " +
+                    "  local s, q, p, v = string.match(cur, '^(%a)|(-?%d+)|(-?%d+)|(%d+)$') " +
+                    "  if tonumber(v) >= tonumber(ARGV[5]) then return 0 end " +
+                    "  live, oldQ, oldP = (s == 'L'), tonumber(q), tonumber(p) " +
+                    "end " +
+                    "redis.call('HSET', KEYS[1], f, ARGV[2] .. '|' .. ARGV[3] .. '|' .. ARGV[4] .. '|' .. ARGV[5]) " +
+                    "if redis.call('HEXISTS', KEYS[1], 'ready') == 1 then " +
+                    "  local dc, dq, dcost = 0, 0, 0 " +
+                    "  if live then dc, dq, dcost = -1, -oldQ, -oldQ * oldP end " +
+                    "  if ARGV[2] == 'L' then " +
+                    "    local q, p = tonumber(ARGV[3]), tonumber(ARGV[4]) " +
+                    "    dc, dq, dcost = dc + 1, dq + q, dcost + q * p " +
+                    "  end " +
+                    "  redis.call('HINCRBY', KEYS[1], 'count', string.format('%.0f', dc)) " +
+                    "  redis.call('HINCRBY', KEYS[1], 'qty', string.format('%.0f', dq)) " +
+                    "  redis.call('HINCRBY', KEYS[1], 'cost', string.format('%.0f', dcost)) " +
+                    "end " +
+                    "local t = redis.call('TIME') " +
+                    "local now = tonumber(t[1]) * 1000 + math.floor(tonumber(t[2]) / 1000) " +
+                    "if ARGV[2] == 'D' then " +
+                    "  redis.call('ZADD', KEYS[2], now + tonumber(ARGV[7]), ARGV[1]) " +
+                    "  redis.call('PEXPIRE', KEYS[2], tonumber(ARGV[6]) + tonumber(ARGV[7])) " +
+                    "end " +
+                    "local due = redis.call('ZRANGEBYSCORE', KEYS[2], '-inf', now, 'LIMIT', 0, 16) " +
+                    "for i = 1, #due do " +
+                    "  local d = redis.call('HGET', KEYS[1], 'p:' .. due[i]) " +
+                    "  if d and string.sub(d, 1, 1) == 'D' then redis.call('HDEL', KEYS[1], 'p:' .. due[i]) end " +
+                    "  redis.call('ZREM', KEYS[2], due[i]) " +
+                    "end " +
+                    "if redis.call('PTTL', KEYS[1]) < 0 then redis.call('PEXPIRE', KEYS[1], ARGV[6]) end " +
+                    "return 1";
+
+    // KEYS[1]=hash; ARGV[1]=ttl ms, then per position: id, qty, price scaled, version.
+    // Merges the DB snapshot under the same version rule, then computes the totals once.
+    public static final DefaultRedisScript<Long> CLIENT_AGGREGATE_BOOTSTRAP =
+            new DefaultRedisScript<>(
+                    "if redis.call('HEXISTS', KEYS[1], 'ready') == 1 then return 0 end " +
+                            "for i = 2, #ARGV, 4 do " +
+                            "  local f = 'p:' .. ARGV[i] " +
+                            "  local cur = redis.call('HGET', KEYS[1], f) " +
+                            "  if not cur or tonumber(string.match(cur, '|(%d+)$')) < tonumber(ARGV[i + 3]) then " +
+                            "    redis.call('HSET', KEYS[1], f, 'L|' .. ARGV[i + 1] .. '|' .. ARGV[i + 2] .. '|' .. ARGV[i + 3]) " +
+                            "  end " +
+                            "end " +
+                            "local count, qty, cost = 0, 0, 0 " +
+                            "local all = redis.call('HGETALL', KEYS[1]) " +
+                            "for i = 1, #all, 2 do " +
+                            "  if string.sub(all[i], 1, 2) == 'p:' then " +
+                            "    local s, q, p = string.match(all[i + 1], '^(%a)|(-?%d+)|(-?%d+)|') " +
+                            "    if s == 'L' then count, qty, cost = count + 1, qty + tonumber(q), cost + tonumber(q) * tonumber(p) end " +
+                            "  end " +
+                            "end " +
+                            "redis.call('HSET', KEYS[1], 'count', count, 'qty', string.format('%.0f', qty), " +
+                            "  'cost', string.format('%.0f', cost), 'ready', '1') " +
+                            "redis.call('PEXPIRE', KEYS[1], ARGV[1]) " +
+                            "return 1",
+                    Long.class
+            );
 }
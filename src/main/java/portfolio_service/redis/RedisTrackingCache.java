@@ -0,0 +1,255 @@
+package portfolio_service.redis;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.lettuce.core.RedisChannelHandler;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisConnectionStateListener;
+import io.lettuce.core.TrackingArgs;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.push.PushMessage;
+import io.lettuce.core.codec.StringCodec;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.SocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Local copy of Redis values that the server keeps valid: RESP3 CLIENT TRACKING in BCAST mode on one
+ * dedicated connection, with a prefix per tenant (everything under RedisKeys' "<env>:<tenant>:cache:").
+ * Redis pushes the keys under those prefixes whenever they change, expire or get evicted, whoever wrote them,
+ * so reads don't need to go over the tracking connection and there is no invalidation bus of our own.
+ * <p>
+ * A read leaves a ticket in the map before going to Redis and only stores the value if the ticket is still there,
+ * so an invalidation that lands while the read is in flight is never overwritten by the older value.
+ * While the tracking connection is down nothing is served locally; everything is dropped on disconnect
+ * and tracking is switched back on after the reconnect.
+ * Values are shared byte arrays, callers must not modify them.
+ */
+public class RedisTrackingCache implements RedisConnectionStateListener {
+
+    private static final Logger log = LoggerFactory.getLogger(RedisTrackingCache.class);
+
+    private static final String CACHE_SEGMENT = ":cache:";
+
+    private final RedisClient client;
+    private final StatefulRedisConnection<String, byte[]> connection;
+    private final Cache<String, Object> values;
+    private final Set<String> prefixes = ConcurrentHashMap.newKeySet();
+    // prefixes whose CLIENT TRACKING call is in flight
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+    private final int maxPrefixes;
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter invalidations;
+
+    private volatile boolean active;
+
+    /**
+     * A cache that tracks nothing: every read goes to Redis.
+     */
+    public static RedisTrackingCache disabled() {
+        return new RedisTrackingCache();
+    }
+
+    private RedisTrackingCache() {
+        this.client = null;
+        this.connection = null;
+        this.values = null;
+        this.maxPrefixes = 0;
+        this.hits = null;
+        this.misses = null;
+        this.invalidations = null;
+    }
+
+    /**
+     * @param client a client of its own with RESP3, so invalidations arrive as pushes on the same connection
+     */
+    public RedisTrackingCache(RedisClient client, StatefulRedisConnection<String, byte[]> connection,
+                              long maxBytes, Duration localTtl, int maxPrefixes, MeterRegistry registry) {
+        this.client = client;
+        this.connection = connection;
+        this.maxPrefixes = maxPrefixes;
+        this.values = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((String k, Object v) -> v instanceof byte[] b ? Math.max(1, b.length) : 1)
+                // invalidations do the real work; this only bounds the damage of one that got lost
+                .expireAfterWrite(localTtl)
+                .build();
+        this.hits = registry.counter("portfolio_redis_tracking_lookups", "result", "hit");
+        this.misses = registry.counter("portfolio_redis_tracking_lookups", "result", "miss");
+        this.invalidations = registry.counter("portfolio_redis_tracking_invalidations");
+
+        client.addListener(this);
+        connection.addListener(this::onPush);
+        active = true;
+    }
+
+    public byte[] get(String key, Function<String, byte[]> remote) {
+        if (!tracks(key)) return remote.apply(key);
+
+        Object local = values.getIfPresent(key);
+        if (local instanceof byte[] b) {
+            hits.increment();
+            return b;
+        }
+        misses.increment();
+
+        Object ticket = new Object();
+        values.put(key, ticket);
+        byte[] value = remote.apply(key);
+        keep(key, ticket, value);
+        return value;
+    }
+
+    /**
+     * Local hits first, then one remote call for the rest.
+     * @param remote same contract as MGET: a list of the same size and order as its keys
+     */
+    public List<byte[]> getAll(List<String> keys, Function<List<String>, List<byte[]>> remote) {
+        if (values == null) return remote.apply(keys);
+
+        List<byte[]> out = new ArrayList<>(keys.size());
+        List<Integer> missing = new ArrayList<>();
+        List<String> missingKeys = new ArrayList<>();
+        List<Object> tickets = new ArrayList<>();
+        for (int i = 0; i < keys.size(); i++) {
+            String key = keys.get(i);
+            Object local = tracks(key) ? values.getIfPresent(key) : null;
+            if (local instanceof byte[] b) {
+                hits.increment();
+                out.add(b);
+                continue;
+            }
+            out.add(null);
+            missing.add(i);
+            missingKeys.add(key);
+            Object ticket = null;
+            if (tracks(key)) {
+                misses.increment();
+                ticket = new Object();
+                values.put(key, ticket);
+            }
+            tickets.add(ticket);
+        }
+        if (missingKeys.isEmpty()) return out;
+
+        List<byte[]> fetched = remote.apply(missingKeys);
+        for (int j = 0; j < missingKeys.size(); j++) {
+            byte[] value = fetched.get(j);
+            out.set(missing.get(j), value);
+            if (tickets.get(j) != null) keep(missingKeys.get(j), tickets.get(j), value);
+        }
+        return out;
+    }
+
+    /**
+     * Drops keys this instance just wrote, without waiting for the server's push.
+     */
+    public void invalidate(Collection<String> keys) {
+        if (values != null) values.invalidateAll(keys);
+    }
+
+    public void invalidate(String key) {
+        if (values != null) values.invalidate(key);
+    }
+
+    public void close() {
+        if (client == null) return;
+        active = false;
+        connection.close();
+        client.shutdown();
+    }
+
+    @Override
+    public void onRedisConnected(RedisChannelHandler<?, ?> channel, SocketAddress socketAddress) {
+        if (channel != connection) return;
+        if (prefixes.isEmpty()) {
+            active = true;
+            return;
+        }
+        // a new connection has no tracking state; nothing is served locally until it's back on
+        connection.async().clientTracking(trackingArgs(prefixes)).whenComplete((ok, e) -> {
+            if (e != null) {
+                log.warn("Re-enabling Redis client tracking failed, local copies stay off. reason={}", e.getMessage());
+                return;
+            }
+            values.invalidateAll();
+            active = true;
+        });
+    }
+
+    @Override
+    public void onRedisDisconnected(RedisChannelHandler<?, ?> channel) {
+        if (channel != connection) return;
+        // invalidations for the time we're away are gone
+        active = false;
+        values.invalidateAll();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void onPush(PushMessage message) {
+        if (!"invalidate".equals(message.getType())) return;
+        invalidations.increment();
+        List<Object> content = message.getContent(StringCodec.UTF8::decodeKey);
+        Object keys = content.size() > 1 ? content.get(1) : null;
+        // null: the whole keyspace went (FLUSHALL/FLUSHDB)
+        if (keys == null) values.invalidateAll();
+        else values.invalidateAll((List<String>) keys);
+    }
+
+    private void keep(String key, Object ticket, byte[] value) {
+        if (value != null && active) values.asMap().replace(key, ticket, value);
+        else values.asMap().remove(key, ticket);
+    }
+
+    private boolean tracks(String key) {
+        if (values == null || !active) return false;
+        String prefix = prefixOf(key);
+        if (prefix == null) return false;
+        if (prefixes.contains(prefix)) return true;
+        register(prefix);
+        return false;
+    }
+
+    // "<env>:<tenant>:cache:"; keys outside :cache: (aggregates, locks, rate limits) are never copied
+    private static String prefixOf(String key) {
+        int i = key.indexOf(CACHE_SEGMENT);
+        return i < 0 ? null : key.substring(0, i + CACHE_SEGMENT.length());
+    }
+
+    // a tenant's prefix has to be tracked before the first value under it is kept; reads stay remote until
+    // Redis has confirmed it, so no caller ever blocks on the registration
+    private void register(String prefix) {
+        if (!pending.add(prefix)) return;
+        // concurrent registrations may both be turned away here, never both let past the limit
+        if (prefixes.size() + pending.size() > maxPrefixes) {
+            pending.remove(prefix);
+            return;
+        }
+        try {
+            // adds to the prefixes the connection already tracks
+            connection.async().clientTracking(trackingArgs(List.of(prefix))).whenComplete((ok, e) -> {
+                if (e == null) prefixes.add(prefix);
+                else log.warn("Redis client tracking for prefix {} failed, reading it remotely. reason={}", prefix, e.getMessage());
+                pending.remove(prefix);
+            });
+        } catch (Exception e) {
+            pending.remove(prefix);
+            log.warn("Redis client tracking for prefix {} failed, reading it remotely. reason={}", prefix, e.getMessage());
+        }
+    }
+
+    private static TrackingArgs trackingArgs(Collection<String> prefixes) {
+        return TrackingArgs.Builder.enabled().bcast().prefixes(prefixes.toArray(String[]::new));
+    }
+}
@@ -1,11 +1,63 @@
 package portfolio_service.repository;
 
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import portfolio_service.domain.PortfolioPosition;
 
 import java.util.List;
 import java.util.UUID;
+import java.util.stream.Stream;
 
-public interface PortfolioPositionRepository extends JpaRepository<PortfolioPosition, UUID> {
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.HibernateHints.HINT_READ_ONLY;
+
+public interface PortfolioPositionRepository extends JpaRepository<PortfolioPosition, UUID>,
+        PortfolioPositionWriteRepository {
     List<PortfolioPosition> findByClientId(String clientId);
+
+    /**
+     * Exactly the rows matching the given (clientId, symbol) pairs, as one parameter, however many there are
+     * (an IN list per column would bind one parameter per value, and SQL Server takes at most 2100).
+     * @param pairsJson JSON array of [clientId, symbol] arrays; the WITH types match the columns, so idx_client_symbol seeks
+     */
+    @Query(value = """
+            SELECT p.* FROM portfolio_position p
+            JOIN OPENJSON(:pairs) WITH (client_id varchar(64) '$[0]', symbol varchar(32) '$[1]') k
+              ON p.client_id = k.client_id AND p.symbol = k.symbol
+            """, nativeQuery = true)
+    List<PortfolioPosition> findByClientIdAndSymbolPairs(@Param("pairs") String pairsJson);
+
+    // keyset pages on (symbol, id): a seek on idx_client_symbol (the clustered id rides along in it), no OFFSET
+    List<PortfolioPosition> findByClientIdOrderBySymbolAscIdAsc(String clientId, Limit limit);
+
+    @Query("""
+            select p from PortfolioPosition p
+            where p.clientId = :clientId
+              and (p.symbol > :symbol or (p.symbol = :symbol and p.id > :id))
+            order by p.symbol, p.id
+            """)
+    List<PortfolioPosition> findPageAfter(@Param("clientId") String clientId,
+                                          @Param("symbol") String symbol,
+                                          @Param("id") UUID id,
+                                          Limit limit);
+
+    // must be consumed inside a transaction; rows are fetched from the driver in chunks as the stream advances
+    @QueryHints({
+            @QueryHint(name = HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HINT_READ_ONLY, value = "true")
+    })
+    @Query("select p from PortfolioPosition p where p.clientId = :clientId order by p.symbol, p.id")
+    Stream<PortfolioPosition> streamByClientId(@Param("clientId") String clientId);
+
+    // every id, for PositionIdFilter; same streaming rules as streamByClientId
+    @QueryHints({
+            @QueryHint(name = HINT_FETCH_SIZE, value = "5000"),
+            @QueryHint(name = HINT_READ_ONLY, value = "true")
+    })
+    @Query("select p.id from PortfolioPosition p")
+    Stream<UUID> streamAllIds();
 }
@@ -0,0 +1,29 @@
+package portfolio_service.repository;
+
+import portfolio_service.dto.PositionResponse;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Single-statement writes: the row is changed and returned by the same statement (SQL Server OUTPUT),
+ * instead of loading the entity first. They bypass the persistence context, so don't mix them with a
+ * loaded PortfolioPosition of the same id in one transaction.
+ */
+public interface PortfolioPositionWriteRepository {
+
+    /**
+     * Bumps the version like a Hibernate update would.
+     * @param expectedVersions only update if the row is still at one of these versions; null = any version
+     * @return the row as written, or empty if there is no such position (at those versions)
+     */
+    Optional<PositionResponse> updateReturning(UUID id, Collection<Long> expectedVersions, String symbol, long quantity, BigDecimal avgPrice);
+
+    /**
+     * @param expectedVersions only delete if the row is still at one of these versions; null = any version
+     * @return the deleted row, or empty if there is no such position (at those versions)
+     */
+    Optional<PositionResponse> deleteReturning(UUID id, Collection<Long> expectedVersions);
+}
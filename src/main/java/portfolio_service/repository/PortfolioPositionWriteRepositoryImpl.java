@@ -0,0 +1,80 @@
+package portfolio_service.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import portfolio_service.dto.PositionResponse;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+@RequiredArgsConstructor
+public class PortfolioPositionWriteRepositoryImpl implements PortfolioPositionWriteRepository {
+
+    private static final String COLUMNS = "%1$s.id, %1$s.client_id, %1$s.symbol, %1$s.quantity, %1$s.avg_price, %1$s.updated_at, %1$s.version";
+
+    // same check Hibernate's @Version does, widened to the versions an If-Match list names; left off for "don't care"
+    private static final String VERSION_CHECK = " AND version IN (:expectedVersions)";
+
+    private static final String UPDATE_SQL = """
+            UPDATE portfolio_position
+            SET symbol = :symbol, quantity = :quantity, avg_price = :avgPrice, updated_at = :updatedAt,
+                version = version + 1
+            OUTPUT %s
+            WHERE id = :id""".formatted(COLUMNS.formatted("inserted"));
+
+    private static final String DELETE_SQL = """
+            DELETE FROM portfolio_position
+            OUTPUT %s
+            WHERE id = :id""".formatted(COLUMNS.formatted("deleted"));
+
+    private static final RowMapper<PositionResponse> ROW = (rs, n) -> PositionResponse.builder()
+            .id(UUID.fromString(rs.getString("id")))
+            .clientId(rs.getString("client_id"))
+            .symbol(rs.getString("symbol"))
+            .quantity(rs.getLong("quantity"))
+            .avgPrice(rs.getBigDecimal("avg_price"))
+            .updatedAt(rs.getObject("updated_at", OffsetDateTime.class).toInstant())
+            .version(rs.getLong("version"))
+            .build();
+
+    private final NamedParameterJdbcTemplate jdbc;
+
+    @Override
+    public Optional<PositionResponse> updateReturning(UUID id, Collection<Long> expectedVersions, String symbol, long quantity, BigDecimal avgPrice) {
+        // what @PreUpdate would have set; micros is what the column keeps
+        Instant now = Instant.now().truncatedTo(ChronoUnit.MICROS);
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("id", id.toString())
+                .addValue("expectedVersions", expectedVersions)
+                .addValue("symbol", symbol)
+                .addValue("quantity", quantity)
+                .addValue("avgPrice", avgPrice)
+                .addValue("updatedAt", now.atOffset(ZoneOffset.UTC));
+        return first(jdbc.query(versionChecked(UPDATE_SQL, expectedVersions), params, ROW));
+    }
+
+    @Override
+    public Optional<PositionResponse> deleteReturning(UUID id, Collection<Long> expectedVersions) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("id", id.toString())
+                .addValue("expectedVersions", expectedVersions);
+        return first(jdbc.query(versionChecked(DELETE_SQL, expectedVersions), params, ROW));
+    }
+
+    private static String versionChecked(String sql, Collection<Long> expectedVersions) {
+        return expectedVersions == null ? sql : sql + VERSION_CHECK;
+    }
+
+    private static Optional<PositionResponse> first(List<PositionResponse> rows) {
+        return rows.isEmpty() ? Optional.empty() : Optional.of(rows.get(0));
+    }
+}
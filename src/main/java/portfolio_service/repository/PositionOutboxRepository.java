@@ -0,0 +1,7 @@
+package portfolio_service.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import portfolio_service.domain.PositionOutboxEvent;
+
+public interface PositionOutboxRepository extends JpaRepository<PositionOutboxEvent, Long> {
+}
@@ -1,29 +1,66 @@
 package portfolio_service.service;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import portfolio_service.api.BadRequestException;
 import portfolio_service.api.NotFoundException;
+import portfolio_service.api.PreconditionFailedException;
 import portfolio_service.config.TenantContext;
 import portfolio_service.config.TraceIdFilter;
 import portfolio_service.domain.PortfolioPosition;
+import portfolio_service.dto.BatchGetPositionsResponse;
+import portfolio_service.dto.BulkUpsertPositionsResponse;
+import portfolio_service.dto.ClientPortfolioResponse;
 import portfolio_service.dto.CreatePositionRequest;
+import portfolio_service.dto.PositionPageResponse;
+import portfolio_service.dto.PositionPayload;
 import portfolio_service.dto.PositionResponse;
 import portfolio_service.dto.UpdatePositionRequest;
 import portfolio_service.kafka.PositionChangedEvent;
+import portfolio_service.kafka.PositionChangedEvents;
 import portfolio_service.kafka.PositionEventType;
+import portfolio_service.redis.CacheAsideExecutor;
+import portfolio_service.redis.CacheAsidePolicy;
+import portfolio_service.redis.CacheCodec;
+import portfolio_service.redis.CacheInvalidationBatch;
+import portfolio_service.redis.CacheMetrics;
 import portfolio_service.redis.CacheTtl;
+import portfolio_service.redis.ClientAggregateStore;
+import portfolio_service.redis.NearCache;
+import portfolio_service.redis.PositionCacheRefresher;
+import portfolio_service.redis.PositionCodec;
 import portfolio_service.redis.PositionProtoMapper;
 import portfolio_service.redis.RedisBytesCache;
 import portfolio_service.redis.RedisKeys;
-import portfolio_service.redis.RedisLock;
+import portfolio_service.redis.SingleFlight;
 import portfolio_service.repository.PortfolioPositionRepository;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
@@ -31,10 +68,63 @@ public class PortfolioPositionService {
 
     private static final String ENV = "prod";
 
+    private static final int MAX_PAGE_SIZE = 1000;
+
     private final PortfolioPositionRepository repo;
     private final RedisBytesCache cache;
-    private final RedisLock lock;
+    private final NearCache nearCache;
+    private final SingleFlight singleFlight;
+    private final CacheAsideExecutor cacheAside;
+    private final PositionCacheRefresher cacheRefresher;
+    private final CacheInvalidationBatch invalidations;
+    private final ClientAggregateStore aggregates;
     private final ApplicationEventPublisher events;
+    private final PlatformTransactionManager transactionManager;
+    private final EntityManager entityManager;
+    private final CacheMetrics metrics;
+    private final PositionIdFilter idFilter;
+    private final PositionCodec positionCodec;
+    private final ObjectMapper objectMapper;
+
+    @Value("${app.cache.write-through:false}")
+    private boolean writeThrough;
+
+    @Value("${app.bulk.chunk-size:500}")
+    private int bulkChunkSize;
+
+    private final CacheAsidePolicy<PositionResponse> positionPolicy = CacheAsidePolicy.<PositionResponse>builder()
+            .operation(CacheMetrics.Operation.GET_BY_ID)
+            .codec(CacheCodec.of(this::encodePosition, PositionProtoMapper::fromBytes))
+            .ttl(CacheTtl::positionTtlWithJitter)
+            .nearTtl(CacheTtl.positionTtl())
+            .stampede(CacheAsidePolicy.Stampede.DISTRIBUTED_LOCK)
+            .writer(this::cachePosition)
+            .negativeTtl(CacheTtl.positionNotFoundTtl())
+            .earlyRefresh(true)
+            .build();
+
+    private final CacheAsidePolicy<List<PositionResponse>> listPolicy = CacheAsidePolicy.<List<PositionResponse>>builder()
+            .operation(CacheMetrics.Operation.LIST_BY_CLIENT)
+            .codec(CacheCodec.of(this::encodeList, PositionProtoMapper::listFromBytes))
+            .ttl(CacheTtl::clientListTtlWithJitter)
+            .nearTtl(CacheTtl.clientListTtl())
+            .stampede(CacheAsidePolicy.Stampede.DISTRIBUTED_LOCK)
+            .writer(this::cacheList)
+            // no early refresh: the list write is a plain SET, and a background reload that read the DB before
+            // a write committed would put the old list back after that write dropped it
+            .earlyRefresh(false)
+            .build();
+
+    // a page is one indexed range query: not worth a lock round trip, and pages skip the near cache.
+    // Early refresh is safe here: page keys carry the generation, so a reload that lands after a write
+    // only fills a generation no reader asks for any more
+    private final CacheAsidePolicy<List<PositionResponse>> pagePolicy = CacheAsidePolicy.<List<PositionResponse>>builder()
+            .operation(CacheMetrics.Operation.LIST_PAGE)
+            .codec(CacheCodec.of(this::encodeList, PositionProtoMapper::listFromBytes))
+            .ttl(CacheTtl::clientPageTtlWithJitter)
+            .stampede(CacheAsidePolicy.Stampede.SINGLE_FLIGHT)
+            .earlyRefresh(true)
+            .build();
 
     // of course you can use MapStruct to map all this data,
     // but for simplicity I mapped it in a handy way
@@ -49,166 +139,489 @@ public class PortfolioPositionService {
         p.setUpdatedAt(Instant.now());
 
         PortfolioPosition saved = repo.save(p);
+        idFilter.add(List.of(saved.getId()));
 
-        safeDel(clientListKey(saved.getClientId()));
+        if (writeThrough) {
+            refreshAfterCommit(saved);
+        } else {
+            // drops a "not found" cached for this id too
+            invalidations.unlinkAfterCommit(positionKey(saved.getId().toString()), clientListKey(saved.getClientId()));
+        }
+        invalidations.unlinkAfterCommit(clientPageGenerationKey(saved.getClientId()));
 
         publishEvent(saved, PositionEventType.POSITION_CREATED);
         return toResponse(saved);
     }
 
-    @Transactional(readOnly = true)
-    public PositionResponse getById(UUID id) {
-
-        //this one Could be extracted into a separate helper (e.g., CacheAsideExecutor)
-        // to keep service methods clean.
+    /**
+     * Creates or updates positions matched on (clientId, symbol), committing every app.bulk.chunk-size rows.
+     * Per chunk: one lookup query, batched INSERT/UPDATE statements, one UNLINK for all touched keys
+     * and one batched outbox write. Write-through mode is not applied here, the keys are only invalidated.
+     */
+    public BulkUpsertPositionsResponse bulkUpsert(List<CreatePositionRequest> items) {
+        long start = System.nanoTime();
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+
+        int created = 0;
+        int updated = 0;
+        int chunks = 0;
+        for (int from = 0; from < items.size(); from += bulkChunkSize) {
+            List<CreatePositionRequest> chunk = items.subList(from, Math.min(from + bulkChunkSize, items.size()));
+            int[] counts = tx.execute(status -> upsertChunk(chunk));
+            created += counts[0];
+            updated += counts[1];
+            chunks++;
+        }
 
-        String cacheKey = positionKey(id.toString());
-        String lockKey  = RedisKeys.positionByIdLock(ENV, tenantNs(), id.toString());
+        long elapsedNanos = Math.max(1, System.nanoTime() - start);
+        int rows = created + updated;
+        return BulkUpsertPositionsResponse.builder()
+                .created(created)
+                .updated(updated)
+                .chunks(chunks)
+                .elapsedMs(TimeUnit.NANOSECONDS.toMillis(elapsedNanos))
+                .rowsPerSecond(rows * 1_000_000_000L / elapsedNanos)
+                .build();
+    }
 
-        try {
-            byte[] bytes = cache.get(cacheKey);
-            if (bytes != null) {
-                return PositionProtoMapper.fromBytes(bytes);
-            }
-        } catch (Exception ignoreFailOpen) {}
+    private int[] upsertChunk(List<CreatePositionRequest> chunk) {
+        // last one wins if the same (clientId, symbol) shows up twice
+        Map<String, CreatePositionRequest> byKey = new LinkedHashMap<>();
+        Map<String, List<String>> pairs = new LinkedHashMap<>();
+        for (CreatePositionRequest req : chunk) {
+            String clientId = req.getClientId().trim();
+            String symbol = req.getSymbol().trim();
+            String key = naturalKey(clientId, symbol);
+            byKey.put(key, req);
+            pairs.putIfAbsent(key, List.of(clientId, symbol));
+        }
 
-        String token = null;
-        try {
-            token = lock.tryLock(lockKey, CacheTtl.cacheRebuildLockTtl());
-            if (token == null) {
-                PositionResponse cached = waitForCache(cacheKey);
-                if (cached != null) return cached;
+        Map<String, PortfolioPosition> existing = new HashMap<>();
+        for (PortfolioPosition p : repo.findByClientIdAndSymbolPairs(toJson(pairs.values()))) {
+            existing.putIfAbsent(naturalKey(p.getClientId(), p.getSymbol()), p);
+        }
 
-                return loadFromDbAndBestEffortCacheById(id, cacheKey);
+        List<PortfolioPosition> touched = new ArrayList<>(byKey.size());
+        List<PositionEventType> types = new ArrayList<>(byKey.size());
+        List<PortfolioPosition> updated = new ArrayList<>();
+        List<UUID> createdIds = new ArrayList<>();
+        Set<String> keys = new LinkedHashSet<>();
+        int created = 0;
+        for (Map.Entry<String, CreatePositionRequest> e : byKey.entrySet()) {
+            CreatePositionRequest req = e.getValue();
+            PortfolioPosition p = existing.get(e.getKey());
+            boolean isNew = p == null;
+            if (isNew) {
+                p = new PortfolioPosition();
+                p.setId(UUID.randomUUID());
+                p.setClientId(req.getClientId().trim());
+                p.setSymbol(req.getSymbol().trim());
             }
+            p.setQuantity(req.getQuantity());
+            p.setAvgPrice(req.getAvgPrice());
+            p.setUpdatedAt(Instant.now());
+
+            if (isNew) {
+                // persist, not repo.save: save() on an assigned id merges, i.e. one SELECT per row
+                entityManager.persist(p);
+                created++;
+                createdIds.add(p.getId());
+                keys.add(positionKey(p.getId().toString()));
+            } else {
+                updated.add(p);
+            }
+            keys.add(clientListKey(p.getClientId()));
+            keys.add(clientPageGenerationKey(p.getClientId()));
+            touched.add(p);
+            types.add(isNew ? PositionEventType.POSITION_CREATED : PositionEventType.POSITION_UPDATED);
+        }
 
-            // token != null
-            try {
-                byte[] bytes2 = cache.get(cacheKey);
-                if (bytes2 != null) {
-                    return PositionProtoMapper.fromBytes(bytes2);
-                }
-            } catch (Exception ignoreFailOpen) {}
+        // statements go out here in JDBC batches (hibernate.jdbc.batch_size, ordered inserts/updates)
+        entityManager.flush();
+
+        // flush bumped @Version on the updated rows, which the fences and events carry
+        List<RedisBytesCache.Versioned> fences = new ArrayList<>(updated.size());
+        for (PortfolioPosition p : updated) fences.add(fence(p.getId(), p.getVersion()));
+        List<PositionChangedEvent> changes = new ArrayList<>(touched.size());
+        for (int i = 0; i < touched.size(); i++) changes.add(newEvent(touched.get(i), types.get(i)));
+        entityManager.clear();
+
+        idFilter.add(createdIds);
+        cacheRefresher.fenceAfterCommit(fences);
+        invalidations.unlinkAfterCommit(keys.toArray(String[]::new));
+        events.publishEvent(new PositionChangedEvents(changes));
+        return new int[] {created, byKey.size() - created};
+    }
 
-            PositionResponse resp = loadFromDb(id);
+    private String toJson(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot serialize bulk lookup keys", e);
+        }
+    }
 
-            try {
-                cache.set(cacheKey, PositionProtoMapper.toBytes(resp), CacheTtl.positionTtlWithJitter());
-            } catch (Exception ignore) {}
+    private static String naturalKey(String clientId, String symbol) {
+        return clientId + "\n" + symbol;
+    }
 
-            return resp;
+    @Transactional(readOnly = true)
+    public PositionResponse getById(UUID id) {
+        PositionResponse resp = cacheAside.get(positionPolicy, positionKey(id.toString()),
+                RedisKeys.positionByIdLock(ENV, tenantNs(), id.toString()), loader(id));
+        if (resp == null) throw notFound(id);
+        return resp;
+    }
 
-        } finally {
-            if (token != null) {
-                try { lock.unlock(lockKey, token); } catch (Exception ignore) {}
-            }
+    /**
+     * Same as getById, but an L2 hit is returned as the raw cached bytes so the controller
+     * can write them out as-is. The ETag is the position version.
+     */
+    @Transactional(readOnly = true)
+    public PositionPayload getByIdPayload(UUID id) {
+        String cacheKey = positionKey(id.toString());
+        // the version key comes back in the same round trip, so the ETag needs no decode
+        CacheAsideExecutor.Read<PositionResponse> r = cacheAside.read(positionPolicy, cacheKey,
+                RedisKeys.positionByIdLock(ENV, tenantNs(), id.toString()), positionVersionKey(id.toString()),
+                loader(id));
+        if (!r.raw()) {
+            if (r.value() == null) throw notFound(id);
+            return PositionPayload.of(r.value()).withEtag(Long.toString(r.value().getVersion()));
+        }
+
+        try {
+            String etag = r.companion() != null
+                    ? new String(r.companion(), StandardCharsets.US_ASCII)
+                    : Long.toString(PositionProtoMapper.versionOf(r.bytes()));
+            return PositionPayload.encoded(r.bytes(), false).withEtag(etag);
+        } catch (Exception e) {
+            // unreadable cached bytes: get() decodes them, fails open and reloads
+            PositionResponse resp = getById(id);
+            return PositionPayload.of(resp).withEtag(Long.toString(resp.getVersion()));
         }
     }
 
+    /**
+     * The position's ETag as known to the near cache or the Redis version key, without reading the position.
+     * null if neither knows it; the caller then does a normal read.
+     */
+    public String currentPositionEtag(UUID id) {
+        PositionResponse near = nearCache.get(positionKey(id.toString()));
+        if (near != null) return Long.toString(near.getVersion());
+        try {
+            byte[] version = cache.get(positionVersionKey(id.toString()));
+            if (version != null) return new String(version, StandardCharsets.US_ASCII);
+        } catch (Exception ignoreFailOpen) {}
+        return null;
+    }
+
     @Transactional(readOnly = true)
     public List<PositionResponse> listByClient(String clientId) {
         String normalized = clientId.trim();
-        String cacheKey = clientListKey(normalized);
-        String lockKey = RedisKeys.positionsByClientLock(ENV, tenantNs(), normalized);
+        return cacheAside.get(listPolicy, clientListKey(normalized),
+                RedisKeys.positionsByClientLock(ENV, tenantNs(), normalized), () -> loadList(normalized));
+    }
 
+    /**
+     * The ETag is computed from the list that goes out (ids and versions), so it matches the data whether
+     * that came from the near cache, Redis or the DB.
+     */
+    @Transactional(readOnly = true)
+    public PositionPayload listByClientPayload(String clientId) {
+        String normalized = clientId.trim();
+        CacheAsideExecutor.Read<List<PositionResponse>> r = cacheAside.read(listPolicy, clientListKey(normalized),
+                RedisKeys.positionsByClientLock(ENV, tenantNs(), normalized), null, () -> loadList(normalized));
+        // a Redis hit comes decoded too, the list policy has a near cache
+        List<PositionResponse> list = r.value() != null ? r.value() : PositionProtoMapper.listFromBytes(r.bytes());
+        PositionPayload payload = r.raw() ? PositionPayload.encoded(r.bytes(), true) : PositionPayload.of(list);
+        return payload.withEtag(listEtag(list));
+    }
+
+    /**
+     * The ETag stored with the cached list, or null if there is no list or no tag for it in Redis.
+     */
+    public String currentListEtag(String clientId) {
+        String listKey = clientListKey(clientId.trim());
         try {
-            byte[] bytes = cache.get(cacheKey);
-            if (bytes != null) {
-                return PositionProtoMapper.listFromBytes(bytes);
-            }
+            byte[] tag = cache.getCompanion(RedisKeys.positionsByClientTag(listKey), listKey);
+            if (tag != null) return new String(tag, StandardCharsets.US_ASCII);
         } catch (Exception ignoreFailOpen) {}
+        return null;
+    }
+
+    /**
+     * One keyset page ordered by (symbol, id). Pages are cached under the client's current page generation,
+     * which every write to the client drops, so a large book is cached page by page instead of as one value.
+     */
+    @Transactional(readOnly = true)
+    public PositionPageResponse listByClientPage(String clientId, int limit, String cursor) {
+        String normalized = clientId.trim();
+        int size = Math.min(Math.max(limit, 1), MAX_PAGE_SIZE);
+        PageCursor after = PageCursor.decode(cursor);
 
-        String token = null;
+        String pageKey = null;
         try {
-            token = lock.tryLock(lockKey, CacheTtl.cacheRebuildLockTtl());
-            if (token == null) {
-                List<PositionResponse> cached = waitForCacheList(cacheKey);
-                if (cached != null) return cached;
+            pageKey = RedisKeys.positionsByClientPage(ENV, tenantNs(), normalized, pageGeneration(normalized),
+                    size, after == null ? null : after.encode());
+        } catch (Exception e) {
+            CacheMetrics.Stages m = metrics.stages(CacheMetrics.Operation.LIST_PAGE);
+            m.lookup(CacheMetrics.Lookup.ERROR);
+            m.failOpen(CacheMetrics.Stage.L2_READ);
+        }
+
+        Supplier<List<PositionResponse>> load = () -> (after == null
+                ? repo.findByClientIdOrderBySymbolAscIdAsc(normalized, Limit.of(size))
+                : repo.findPageAfter(normalized, after.symbol(), after.id(), Limit.of(size)))
+                .stream()
+                .map(this::toResponse)
+                .toList();
+        return page(pageKey != null ? cacheAside.get(pagePolicy, pageKey, null, load) : load.get(), size);
+    }
 
-                return loadListFromDbAndBestEffortCache(normalized, cacheKey);
+    /**
+     * Hands the client's positions to action one by one, in (symbol, id) order, as the driver fetches them.
+     * Runs its own read-only transaction, so it can be called from a response-writing thread.
+     */
+    public void forEachByClient(String clientId, Consumer<PositionResponse> action) {
+        String normalized = clientId.trim();
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        tx.setReadOnly(true);
+        tx.executeWithoutResult(status -> {
+            try (Stream<PortfolioPosition> rows = repo.streamByClientId(normalized)) {
+                rows.forEach(p -> {
+                    action.accept(toResponse(p));
+                    // keep the persistence context from holding the whole book
+                    entityManager.detach(p);
+                });
             }
+        });
+    }
 
-            try {
-                byte[] bytes2 = cache.get(cacheKey);
-                if (bytes2 != null) {
-                    return PositionProtoMapper.listFromBytes(bytes2);
+    /**
+     * Totals from the event-maintained aggregate: one HMGET whatever the portfolio size.
+     * Only the first read after the aggregate expired scans the client's positions.
+     */
+    @Transactional(readOnly = true)
+    public ClientPortfolioResponse getClientPortfolio(String clientId) {
+        String normalized = clientId.trim();
+        String key = RedisKeys.clientAggregate(ENV, tenantNs(), normalized);
+
+        CacheMetrics.Stages m = metrics.stages(CacheMetrics.Operation.CLIENT_PORTFOLIO);
+
+        ClientAggregateStore.Totals totals = null;
+        long start = System.nanoTime();
+        try {
+            totals = aggregates.read(key);
+            m.lookup(totals != null ? CacheMetrics.Lookup.HIT : CacheMetrics.Lookup.MISS);
+        } catch (Exception e) {
+            m.lookup(CacheMetrics.Lookup.ERROR);
+            m.failOpen(CacheMetrics.Stage.L2_READ);
+        }
+        m.l2Read(System.nanoTime() - start);
+
+        if (totals == null) {
+            totals = singleFlight.execute(key, () -> {
+                List<PositionResponse> positions = m.dbLoad(() -> repo.findByClientId(normalized)).stream()
+                        .map(this::toResponse)
+                        .toList();
+                try {
+                    aggregates.bootstrap(key, positions);
+                    ClientAggregateStore.Totals built = aggregates.read(key);
+                    if (built != null) return built;
+                } catch (Exception e) {
+                    m.failOpen(CacheMetrics.Stage.L2_WRITE);
                 }
-            } catch (Exception ignoreFailOpen) {}
+                return ClientAggregateStore.compute(positions);
+            });
+        }
 
-            List<PositionResponse> resp = repo.findByClientId(normalized).stream()
-                    .map(this::toResponse)
-                    .toList();
+        return ClientPortfolioResponse.builder()
+                .clientId(normalized)
+                .positionCount(totals.positionCount())
+                .totalQuantity(totals.totalQuantity())
+                .costBasis(totals.costBasis())
+                .build();
+    }
 
-            try {
-                cache.set(cacheKey, PositionProtoMapper.listToBytes(resp), CacheTtl.clientListTtl());
-            } catch (Exception ignore) {}
+    /**
+     * L1 first, then one MGET for the rest, then one IN query for what Redis didn't have.
+     * Misses are written back in a single pipeline. No rebuild lock here: the whole batch
+     * costs one query, which is what the lock protects against in the single-id path.
+     */
+    @Transactional(readOnly = true)
+    public BatchGetPositionsResponse batchGet(List<UUID> ids) {
+        Map<UUID, PositionResponse> found = new HashMap<>();
+        List<UUID> remote = new ArrayList<>();
+        CacheMetrics.Stages m = metrics.stages(CacheMetrics.Operation.BATCH_GET);
+
+        for (UUID id : ids.stream().distinct().toList()) {
+            PositionResponse near = nearCache.get(positionKey(id.toString()));
+            if (near != null) {
+                m.lookup(CacheMetrics.Lookup.NEAR_HIT);
+                found.put(id, near);
+            } else {
+                remote.add(id);
+            }
+        }
 
-            return resp;
+        List<UUID> misses = new ArrayList<>();
+        if (!remote.isEmpty()) {
+            List<String> keys = remote.stream().map(id -> positionKey(id.toString())).toList();
+            List<byte[]> values = null;
+            long start = System.nanoTime();
+            try {
+                values = cache.mget(keys);
+            } catch (Exception e) {
+                m.failOpen(CacheMetrics.Stage.L2_READ);
+            }
+            m.l2Read(System.nanoTime() - start);
+
+            for (int i = 0; i < remote.size(); i++) {
+                byte[] bytes = values != null ? values.get(i) : null;
+                if (bytes != null && bytes.length == 0) {
+                    // "not found" cached by getById
+                    m.lookup(CacheMetrics.Lookup.NEGATIVE_HIT);
+                    continue;
+                }
+                UUID id = remote.get(i);
+                // the id filter only decides whether a miss is worth a query
+                boolean loadable = idFilter.mightExist(id);
+                m.lookup(values == null ? CacheMetrics.Lookup.ERROR
+                        : bytes != null ? CacheMetrics.Lookup.HIT
+                        : loadable ? CacheMetrics.Lookup.MISS : CacheMetrics.Lookup.FILTERED);
+                PositionResponse cached = CacheAsideExecutor.decodeOrNull(m, positionCodec.position(), bytes);
+                if (cached != null) found.put(id, rememberPosition(keys.get(i), cached));
+                else if (loadable) misses.add(id);
+            }
+        }
 
-        } finally {
-            if (token != null) {
-                try { lock.unlock(lockKey, token); } catch (Exception ignore) {}
+        if (!misses.isEmpty()) {
+            List<RedisBytesCache.Versioned> toCache = new ArrayList<>(misses.size());
+            for (PortfolioPosition p : m.dbLoad(() -> repo.findAllById(misses))) {
+                String id = p.getId().toString();
+                PositionResponse resp = rememberPosition(positionKey(id), toResponse(p));
+                found.put(p.getId(), resp);
+                byte[] bytes = positionCodec.toBytes(resp);
+                m.payload(bytes.length);
+                toCache.add(new RedisBytesCache.Versioned(positionKey(id), positionVersionKey(id), resp.getVersion(), bytes));
+            }
+            try {
+                cache.setAllIfNewer(toCache, CacheTtl::positionTtlWithJitter);
+            } catch (Exception e) {
+                m.failOpen(CacheMetrics.Stage.L2_WRITE);
             }
         }
+
+        List<BatchGetPositionsResponse.Item> items = ids.stream()
+                .map(id -> new BatchGetPositionsResponse.Item(id, found.containsKey(id), found.get(id)))
+                .toList();
+        return BatchGetPositionsResponse.builder().items(items).build();
     }
 
+    /**
+     * @param expectedVersions from If-Match; null updates whatever version is current
+     */
     @Transactional
-    public PositionResponse update(UUID id, UpdatePositionRequest req) {
-        PortfolioPosition p = repo.findById(id)
-                .orElseThrow(() -> new NotFoundException("Position not found: " + id));
+    public PositionResponse update(UUID id, Set<Long> expectedVersions, UpdatePositionRequest req) {
+        // one UPDATE ... OUTPUT round trip instead of SELECT + UPDATE; the row lock makes it atomic
+        // and the version check rides along in the WHERE clause
+        PositionResponse p = repo.updateReturning(id, expectedVersions, req.getSymbol().trim(), req.getQuantity(), req.getAvgPrice())
+                .orElseThrow(() -> notMatched(id, expectedVersions));
+
+        if (writeThrough) {
+            cacheRefresher.upsertAfterCommit(positionKey(id.toString()), positionVersionKey(id.toString()),
+                    clientListKey(p.getClientId()), () -> p);
+        } else {
+            cacheRefresher.fenceAfterCommit(List.of(fence(id, p.getVersion())));
+            invalidations.unlinkAfterCommit(clientListKey(p.getClientId()));
+        }
+        invalidations.unlinkAfterCommit(clientPageGenerationKey(p.getClientId()));
 
-        p.setSymbol(req.getSymbol().trim());
-        p.setQuantity(req.getQuantity());
-        p.setAvgPrice(req.getAvgPrice());
-        p.setUpdatedAt(Instant.now());
+        events.publishEvent(newEvent(p, PositionEventType.POSITION_UPDATED));
+        return p;
+    }
 
-        safeDel(positionKey(id.toString()));
-        safeDel(clientListKey(p.getClientId()));
+    @Transactional
+    public void delete(UUID id, Set<Long> expectedVersions) {
+        PositionResponse p = repo.deleteReturning(id, expectedVersions)
+                .orElseThrow(() -> notMatched(id, expectedVersions));
+
+        // the row is gone, so the tombstone takes the next version
+        long tombstone = p.getVersion() + 1;
+        if (writeThrough) {
+            cacheRefresher.removeAfterCommit(positionKey(id.toString()), positionVersionKey(id.toString()),
+                    clientListKey(p.getClientId()), id, tombstone);
+        } else {
+            cacheRefresher.fenceAfterCommit(List.of(fence(id, tombstone)));
+            invalidations.unlinkAfterCommit(clientListKey(p.getClientId()));
+        }
+        invalidations.unlinkAfterCommit(clientPageGenerationKey(p.getClientId()));
 
-        publishEvent(p, PositionEventType.POSITION_UPDATED);
-        return toResponse(p);
+        events.publishEvent(newEvent(p, PositionEventType.POSITION_DELETED));
     }
 
-    @Transactional
-    public void delete(UUID id) {
-        PortfolioPosition p = repo.findById(id)
-                .orElseThrow(() -> new NotFoundException("Position not found: " + id));
 
-        repo.delete(p);
 
-        safeDel(positionKey(id.toString()));
-        safeDel(clientListKey(p.getClientId()));
 
-        publishEvent(p, PositionEventType.POSITION_DELETED);
-    }
 
 
+    // refused if a newer version (or the tombstone of a delete) is already there: this read may
+    // have started before that write committed
+    private boolean cachePosition(String cacheKey, PositionResponse resp, byte[] bytes, Duration ttl) {
+        return cache.setIfNewer(cacheKey, positionVersionKey(resp.getId().toString()), bytes, resp.getVersion(), ttl);
+    }
 
+    // the list and its ETag in one script, so a stored tag always describes the stored list
+    private boolean cacheList(String cacheKey, List<PositionResponse> list, byte[] bytes, Duration ttl) {
+        cache.setWithCompanion(cacheKey, bytes, RedisKeys.positionsByClientTag(cacheKey),
+                listEtag(list).getBytes(StandardCharsets.US_ASCII), ttl);
+        return true;
+    }
 
+    // ids and versions in list order; any write to the client changes at least one of them or the size
+    private static String listEtag(List<PositionResponse> list) {
+        long h = list.size();
+        for (PositionResponse p : list) {
+            h = (h ^ p.getId().getMostSignificantBits()) * 0x9E3779B97F4A7C15L;
+            h = (h ^ p.getId().getLeastSignificantBits()) * 0x9E3779B97F4A7C15L;
+            h = (h ^ p.getVersion()) * 0x9E3779B97F4A7C15L;
+        }
+        return Long.toHexString(h ^ (h >>> 31));
+    }
 
+    private byte[] encodePosition(PositionResponse resp) {
+        return positionCodec.toBytes(resp);
+    }
 
-    private PositionResponse loadFromDbAndBestEffortCacheById(UUID id, String cacheKey) {
-        PositionResponse resp = loadFromDb(id);
-        try {
-            cache.set(cacheKey, PositionProtoMapper.toBytes(resp), CacheTtl.positionTtlWithJitter());
-        } catch (Exception ignore) {}
-        return resp;
+    private byte[] encodeList(List<PositionResponse> list) {
+        return positionCodec.listToBytes(list);
     }
 
-    private List<PositionResponse> loadListFromDbAndBestEffortCache(String clientId, String cacheKey) {
-        List<PositionResponse> resp = repo.findByClientId(clientId).stream()
-                .map(this::toResponse)
-                .toList();
-        try {
-            cache.set(cacheKey, PositionProtoMapper.listToBytes(resp), CacheTtl.clientListTtl());
-        } catch (Exception ignore) {}
-        return resp;
+    private RuntimeException notMatched(UUID id, Set<Long> expectedVersions) {
+        if (expectedVersions != null && repo.existsById(id)) {
+            return new PreconditionFailedException("Position " + id + " is not at any of versions " + expectedVersions);
+        }
+        return notFound(id);
     }
 
+    // null if there's no such row, which positionPolicy caches as "not found"
     private PositionResponse loadFromDb(UUID id) {
-        PortfolioPosition p = repo.findById(id)
-                .orElseThrow(() -> new NotFoundException("Position not found: " + id));
-        return toResponse(p);
+        return repo.findById(id).map(this::toResponse).orElse(null);
+    }
+
+    // the filter only spares the DB: whatever L1/L2 hold (values, cached "not found") is still served
+    private Supplier<PositionResponse> loader(UUID id) {
+        return idFilter.mightExist(id) ? () -> loadFromDb(id) : null;
+    }
+
+    private static NotFoundException notFound(UUID id) {
+        return new NotFoundException("Position not found: " + id);
+    }
+
+    private List<PositionResponse> loadList(String clientId) {
+        return repo.findByClientId(clientId).stream()
+                .map(this::toResponse)
+                .toList();
     }
 
     private PositionResponse toResponse(PortfolioPosition p) {
@@ -219,6 +632,7 @@ public class PortfolioPositionService {
                 .quantity(p.getQuantity())
                 .avgPrice(p.getAvgPrice())
                 .updatedAt(p.getUpdatedAt())
+                .version(p.getVersion())
                 .build();
     }
 
@@ -230,45 +644,87 @@ public class PortfolioPositionService {
         return RedisKeys.positionById(ENV, tenantNs(), id);
     }
 
+    private String positionVersionKey(String id) {
+        return RedisKeys.positionVersion(ENV, tenantNs(), id);
+    }
+
+    private RedisBytesCache.Versioned fence(UUID id, long version) {
+        return new RedisBytesCache.Versioned(positionKey(id.toString()), positionVersionKey(id.toString()), version, null);
+    }
+
     private String clientListKey(String clientId) {
         return RedisKeys.positionsByClient(ENV, tenantNs(), clientId);
     }
 
-    private void safeDel(String key) {
-        try { cache.del(key); } catch (Exception ignore) {}
+    private String clientPageGenerationKey(String clientId) {
+        return RedisKeys.positionsByClientGeneration(ENV, tenantNs(), clientId);
     }
 
-    private PositionResponse waitForCache(String cacheKey) {
-        int[] waitsMs = {50, 80, 120, 200};
-        for (int w : waitsMs) {
-            sleepSilently(w);
-            try {
-                byte[] bytes = cache.get(cacheKey);
-                if (bytes != null) return PositionProtoMapper.fromBytes(bytes);
-            } catch (Exception ignore) {}
+    // a fresh generation is a timestamp, so it never reuses page keys of an older one
+    private String pageGeneration(String clientId) {
+        String key = clientPageGenerationKey(clientId);
+        byte[] gen = cache.get(key);
+        if (gen != null) return new String(gen, StandardCharsets.US_ASCII);
+
+        byte[] fresh = Long.toString(PositionProtoMapper.toMicros(Instant.now())).getBytes(StandardCharsets.US_ASCII);
+        if (!cache.setIfAbsent(key, fresh, CacheTtl.clientPageGenerationTtl())) {
+            byte[] winner = cache.get(key);
+            if (winner != null) fresh = winner;
         }
-        return null;
+        return new String(fresh, StandardCharsets.US_ASCII);
+    }
+
+    private static PositionPageResponse page(List<PositionResponse> items, int size) {
+        String next = null;
+        if (items.size() == size) {
+            PositionResponse last = items.get(items.size() - 1);
+            next = new PageCursor(last.getSymbol(), last.getId()).encode();
+        }
+        return PositionPageResponse.builder().items(items).nextCursor(next).build();
     }
 
-    private List<PositionResponse> waitForCacheList(String cacheKey) {
-        int[] waitsMs = {50, 80, 120, 200};
-        for (int w : waitsMs) {
-            sleepSilently(w);
+    // opaque to clients: base64url of "symbol|id" of the last row of the previous page
+    private record PageCursor(String symbol, UUID id) {
+
+        String encode() {
+            return Base64.getUrlEncoder().withoutPadding()
+                    .encodeToString((symbol + "|" + id).getBytes(StandardCharsets.UTF_8));
+        }
+
+        static PageCursor decode(String cursor) {
+            if (cursor == null || cursor.isBlank()) return null;
             try {
-                byte[] bytes = cache.get(cacheKey);
-                if (bytes != null) return PositionProtoMapper.listFromBytes(bytes);
-            } catch (Exception ignore) {}
+                String raw = new String(Base64.getUrlDecoder().decode(cursor.trim()), StandardCharsets.UTF_8);
+                int sep = raw.lastIndexOf('|');
+                return new PageCursor(raw.substring(0, sep), UUID.fromString(raw.substring(sep + 1)));
+            } catch (RuntimeException e) {
+                throw new BadRequestException("Invalid cursor");
+            }
         }
-        return null;
     }
 
-    private void sleepSilently(int ms) {
-        try { Thread.sleep(ms); }
-        catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+    // the entity is read again after commit, so the cached copy matches what was flushed
+    private void refreshAfterCommit(PortfolioPosition p) {
+        String id = p.getId().toString();
+        cacheRefresher.upsertAfterCommit(positionKey(id), positionVersionKey(id),
+                clientListKey(p.getClientId()), () -> toResponse(p));
+    }
+
+    private PositionResponse rememberPosition(String cacheKey, PositionResponse resp) {
+        nearCache.put(cacheKey, resp, CacheTtl.positionTtl());
+        return resp;
     }
 
     private void publishEvent(PortfolioPosition position, PositionEventType type) {
-        PositionChangedEvent event = new PositionChangedEvent(
+        events.publishEvent(newEvent(position, type));
+    }
+
+    private PositionChangedEvent newEvent(PortfolioPosition position, PositionEventType type) {
+        return newEvent(toResponse(position), type);
+    }
+
+    private PositionChangedEvent newEvent(PositionResponse position, PositionEventType type) {
+        return new PositionChangedEvent(
                 UUID.randomUUID(),
                 type,
                 Instant.now(),
@@ -279,9 +735,10 @@ public class PortfolioPositionService {
                         position.getClientId(),
                         position.getSymbol(),
                         position.getQuantity(),
-                        position.getAvgPrice()
+                        position.getAvgPrice(),
+                        // the row is gone after a delete, so the delete takes the next version
+                        type == PositionEventType.POSITION_DELETED ? position.getVersion() + 1 : position.getVersion()
                 )
         );
-        events.publishEvent(event);
     }
 }
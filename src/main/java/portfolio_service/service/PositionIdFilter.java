@@ -0,0 +1,174 @@
+package portfolio_service.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import portfolio_service.redis.RedisKeys;
+import portfolio_service.repository.PortfolioPositionRepository;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * In-process Bloom filter of every position id, so a cache miss for an id that was never created
+ * (e.g. a client scanning UUIDs) doesn't go to the DB. It is only a hint: the caches are read either way.
+ * Off by default; it can only be turned on once every instance broadcasts its creates.
+ * <p>
+ * New ids are added before the creating transaction commits, here and on the other instances over pub/sub,
+ * so a client can't be handed an id a filter doesn't know yet; a rolled back create only leaves a false
+ * positive. The filter is rebuilt from the table every app.cache.id-filter.rebuild-interval, which also
+ * picks up broadcasts lost while Redis was unreachable. Until the first build finishes every id passes.
+ */
+@Component
+public class PositionIdFilter implements MessageListener {
+
+    private static final Logger log = LoggerFactory.getLogger(PositionIdFilter.class);
+
+    private static final String ENV = "prod";
+
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+
+    // adds this recent are replayed into a rebuilt filter: their rows may not have been visible to its scan
+    private static final long RECENT_WINDOW_MS = 60_000;
+
+    private final PortfolioPositionRepository repo;
+    private final PlatformTransactionManager transactionManager;
+    private final StringRedisTemplate redis;
+    private final boolean enabled;
+    private final long expectedIds;
+    private final Duration rebuildInterval;
+
+    private final ScheduledExecutorService rebuilds = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "position-id-filter");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final ConcurrentLinkedQueue<Recent> recent = new ConcurrentLinkedQueue<>();
+
+    // null until the first build; a rebuild swaps in a new one
+    private volatile BloomFilter filter;
+    // the filter being built, it gets every add the current one gets
+    private volatile BloomFilter building;
+
+    public PositionIdFilter(PortfolioPositionRepository repo,
+                            PlatformTransactionManager transactionManager,
+                            StringRedisTemplate redis,
+                            @Value("${app.cache.id-filter.enabled:false}") boolean enabled,
+                            @Value("${app.cache.id-filter.expected-ids:1000000}") long expectedIds,
+                            @Value("${app.cache.id-filter.rebuild-interval:10m}") Duration rebuildInterval) {
+        this.repo = repo;
+        this.transactionManager = transactionManager;
+        this.redis = redis;
+        this.enabled = enabled;
+        this.expectedIds = expectedIds;
+        this.rebuildInterval = rebuildInterval;
+    }
+
+    /**
+     * false only for ids that certainly don't exist
+     */
+    public boolean mightExist(UUID id) {
+        BloomFilter f = filter;
+        return f == null || f.mightContain(id);
+    }
+
+    /**
+     * Call from the creating transaction, before it commits.
+     */
+    public void add(Collection<UUID> ids) {
+        if (!enabled || ids.isEmpty()) return;
+        addLocal(ids);
+        try {
+            redis.convertAndSend(RedisKeys.positionIdsCreatedChannel(ENV),
+                    ids.stream().map(UUID::toString).collect(Collectors.joining("\n")));
+        } catch (Exception ignoreFailOpen) {}
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        if (!enabled) return;
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        addLocal(Stream.of(body.split("\n")).map(UUID::fromString).toList());
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) return;
+        rebuilds.scheduleWithFixedDelay(this::rebuild, 0, rebuildInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private void addLocal(Collection<UUID> ids) {
+        long now = System.currentTimeMillis();
+        // recorded before the filters are read, so a rebuild that swaps in between still replays them
+        for (UUID id : ids) recent.add(new Recent(id, now));
+        BloomFilter current = filter;
+        BloomFilter next = building;
+        for (UUID id : ids) {
+            if (current != null) current.add(id);
+            if (next != null) next.add(id);
+        }
+        pruneRecent(now);
+    }
+
+    private void rebuild() {
+        long start = System.nanoTime();
+        try {
+            TransactionTemplate tx = new TransactionTemplate(transactionManager);
+            tx.setReadOnly(true);
+            BloomFilter next = tx.execute(status -> {
+                // headroom for the ids created until the next rebuild
+                BloomFilter f = new BloomFilter(Math.max(expectedIds, repo.count() * 3 / 2), FALSE_POSITIVE_RATE);
+                building = f;
+                try (Stream<UUID> ids = repo.streamAllIds()) {
+                    ids.forEach(f::add);
+                }
+                return f;
+            });
+            replayRecent(next);
+            filter = next;
+            building = null;
+            replayRecent(next);
+            log.info("Position id filter rebuilt in {} ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (Exception e) {
+            // keep serving the previous filter (or none), try again next round
+            log.warn("Position id filter rebuild failed. reason={}", e.getMessage());
+        } finally {
+            building = null;
+        }
+    }
+
+    private void replayRecent(BloomFilter f) {
+        for (Recent r : recent) f.add(r.id());
+    }
+
+    private void pruneRecent(long now) {
+        Iterator<Recent> it = recent.iterator();
+        while (it.hasNext() && now - it.next().addedAt() > RECENT_WINDOW_MS) it.remove();
+    }
+
+    private record Recent(UUID id, long addedAt) {}
+
+    @PreDestroy
+    public void close() {
+        rebuilds.shutdown();
+    }
+}
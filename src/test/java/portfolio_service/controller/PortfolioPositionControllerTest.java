@@ -0,0 +1,287 @@
+package portfolio_service.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.JacksonJsonHttpMessageConverter;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import portfolio_service.api.GlobalExceptionHandler;
+import portfolio_service.api.PreconditionFailedException;
+import portfolio_service.config.JacksonConfig;
+import portfolio_service.config.PositionPayloadHttpMessageConverter;
+import portfolio_service.dto.PositionPayload;
+import portfolio_service.dto.PositionResponse;
+import portfolio_service.dto.UpdatePositionRequest;
+import portfolio_service.service.PortfolioPositionService;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class PortfolioPositionControllerTest {
+
+	private static final UUID ID = UUID.fromString("00000000-0000-0000-0000-000000000001");
+	private static final String CLIENT = "c1";
+
+	private final PortfolioPositionService service = mock(PortfolioPositionService.class);
+	private final ObjectMapper objectMapper = new JacksonConfig().objectMapper();
+
+	private MockMvc mvc;
+
+	@BeforeEach
+	void setUp() {
+		mvc = MockMvcBuilders.standaloneSetup(new PortfolioPositionController(service, objectMapper))
+				.setControllerAdvice(new GlobalExceptionHandler())
+				.setMessageConverters(new PositionPayloadHttpMessageConverter(objectMapper),
+						new JacksonJsonHttpMessageConverter())
+				.build();
+		when(service.update(eq(ID), any(), any())).thenReturn(position(4));
+		when(service.getByIdPayload(ID)).thenReturn(PositionPayload.of(position(3)).withEtag("3"));
+		when(service.listByClientPayload(CLIENT)).thenReturn(PositionPayload.of(List.of(position(3))).withEtag("l7"));
+	}
+
+	// --- If-None-Match on GET: weak comparison, 304 without reading the position
+
+	@Test
+	void getWithoutIfNoneMatchReadsAndTags() throws Exception {
+		getById(null).andExpect(status().isOk()).andExpect(header().string(HttpHeaders.ETAG, "\"3\""));
+
+		verify(service, never()).currentPositionEtag(any());
+	}
+
+	@Test
+	void getWithCurrentStrongTagIsNotModified() throws Exception {
+		when(service.currentPositionEtag(ID)).thenReturn("3");
+
+		getById("\"3\"").andExpect(status().isNotModified()).andExpect(header().string(HttpHeaders.ETAG, "\"3\""));
+
+		verify(service, never()).getByIdPayload(any());
+	}
+
+	@Test
+	void getWithCurrentWeakTagIsNotModified() throws Exception {
+		when(service.currentPositionEtag(ID)).thenReturn("3");
+
+		getById("W/\"3\"").andExpect(status().isNotModified());
+	}
+
+	@Test
+	void getWithStarIsNotModified() throws Exception {
+		when(service.currentPositionEtag(ID)).thenReturn("3");
+
+		getById("*").andExpect(status().isNotModified());
+	}
+
+	@Test
+	void getWithListContainingCurrentTagIsNotModified() throws Exception {
+		when(service.currentPositionEtag(ID)).thenReturn("3");
+
+		getById("\"1\", W/\"2\", \"3\"").andExpect(status().isNotModified());
+	}
+
+	@Test
+	void getWithOnlyOldTagsReadsAgain() throws Exception {
+		when(service.currentPositionEtag(ID)).thenReturn("3");
+
+		getById("\"1\", W/\"2\"").andExpect(status().isOk()).andExpect(header().string(HttpHeaders.ETAG, "\"3\""));
+	}
+
+	@Test
+	void getWithUnknownCurrentTagReadsAndComparesTheReadsTag() throws Exception {
+		getById("\"3\"").andExpect(status().isNotModified());
+		getById("\"2\"").andExpect(status().isOk());
+
+		verify(service, times(2)).getByIdPayload(ID);
+	}
+
+	@Test
+	void listWithCurrentTagIsNotModified() throws Exception {
+		when(service.currentListEtag(CLIENT)).thenReturn("l7");
+
+		listByClient("W/\"l7\"").andExpect(status().isNotModified()).andExpect(header().string(HttpHeaders.ETAG, "\"l7\""));
+
+		verify(service, never()).listByClientPayload(any());
+	}
+
+	@Test
+	void listWithStarIsNotModified() throws Exception {
+		when(service.currentListEtag(CLIENT)).thenReturn("l7");
+
+		listByClient("*").andExpect(status().isNotModified());
+	}
+
+	@Test
+	void listWithOldTagReadsAgain() throws Exception {
+		when(service.currentListEtag(CLIENT)).thenReturn("l7");
+
+		listByClient("\"l6\", \"l5\"").andExpect(status().isOk()).andExpect(header().string(HttpHeaders.ETAG, "\"l7\""));
+	}
+
+	@Test
+	void listWithoutStoredTagReadsAndComparesTheReadsTag() throws Exception {
+		listByClient("\"l7\"").andExpect(status().isNotModified());
+		listByClient("\"l6\"").andExpect(status().isOk());
+
+		verify(service, times(2)).listByClientPayload(CLIENT);
+	}
+
+	// --- If-Match on PUT / DELETE: strong comparison, 412 when it can't match
+
+	@Test
+	void updateWithoutIfMatchChangesAnyVersion() throws Exception {
+		update(null).andExpect(status().isOk()).andExpect(header().string(HttpHeaders.ETAG, "\"4\""));
+
+		verify(service).update(eq(ID), isNull(), any());
+	}
+
+	@Test
+	void updateWithStrongTagExpectsThatVersion() throws Exception {
+		update("\"3\"").andExpect(status().isOk()).andExpect(header().string(HttpHeaders.ETAG, "\"4\""));
+
+		verify(service).update(eq(ID), eq(Set.of(3L)), any());
+	}
+
+	@Test
+	void updateWithWeakTagFailsWithoutWriting() throws Exception {
+		update("W/\"3\"").andExpect(status().isPreconditionFailed());
+
+		verifyNoInteractions(service);
+	}
+
+	@Test
+	void updateWithStarChangesAnyVersion() throws Exception {
+		update("*").andExpect(status().isOk());
+
+		verify(service).update(eq(ID), isNull(), any());
+	}
+
+	@Test
+	void updateWithSeveralTagsExpectsAnyOfThem() throws Exception {
+		update("\"2\", \"3\"").andExpect(status().isOk());
+
+		verify(service).update(eq(ID), eq(Set.of(2L, 3L)), any());
+	}
+
+	@Test
+	void updateWithWeakAndStrongTagsKeepsOnlyTheStrongOne() throws Exception {
+		update("W/\"2\", \"3\"").andExpect(status().isOk());
+
+		verify(service).update(eq(ID), eq(Set.of(3L)), any());
+	}
+
+	@Test
+	void updateWithTagThatIsNotAVersionFails() throws Exception {
+		update("\"abc\"").andExpect(status().isPreconditionFailed());
+
+		verifyNoInteractions(service);
+	}
+
+	@Test
+	void updateOfStaleVersionFails() throws Exception {
+		when(service.update(eq(ID), eq(Set.of(3L)), any()))
+				.thenThrow(new PreconditionFailedException("Position " + ID + " is not at any of versions [3]"));
+
+		update("\"3\"").andExpect(status().isPreconditionFailed());
+	}
+
+	@Test
+	void deleteWithStrongTagExpectsThatVersion() throws Exception {
+		remove("\"3\"").andExpect(status().isNoContent());
+
+		verify(service).delete(ID, Set.of(3L));
+	}
+
+	@Test
+	void deleteWithSeveralTagsExpectsAnyOfThem() throws Exception {
+		remove("\"3\", W/\"4\", \"5\"").andExpect(status().isNoContent());
+
+		verify(service).delete(ID, Set.of(3L, 5L));
+	}
+
+	@Test
+	void deleteWithStarOrNoHeaderDeletesAnyVersion() throws Exception {
+		remove("*").andExpect(status().isNoContent());
+		remove(null).andExpect(status().isNoContent());
+
+		verify(service, times(2)).delete(ID, null);
+	}
+
+	@Test
+	void deleteWithWeakTagFailsWithoutWriting() throws Exception {
+		remove("W/\"3\"").andExpect(status().isPreconditionFailed());
+
+		verifyNoInteractions(service);
+	}
+
+	@Test
+	void deleteOfStaleVersionFails() throws Exception {
+		doThrow(new PreconditionFailedException("Position " + ID + " is not at any of versions [3]"))
+				.when(service).delete(ID, Set.of(3L));
+
+		remove("\"3\"").andExpect(status().isPreconditionFailed());
+	}
+
+	private ResultActions getById(String ifNoneMatch) throws Exception {
+		var request = get("/positions/{id}", ID).accept(MediaType.APPLICATION_JSON);
+		if (ifNoneMatch != null) request.header(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+		return mvc.perform(request);
+	}
+
+	private ResultActions listByClient(String ifNoneMatch) throws Exception {
+		var request = get("/clients/{clientId}/positions", CLIENT).accept(MediaType.APPLICATION_JSON);
+		if (ifNoneMatch != null) request.header(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+		return mvc.perform(request);
+	}
+
+	private ResultActions update(String ifMatch) throws Exception {
+		UpdatePositionRequest req = new UpdatePositionRequest();
+		req.setSymbol("AAPL");
+		req.setQuantity(10);
+		req.setAvgPrice(new BigDecimal("1.50"));
+		var request = put("/positions/{id}", ID)
+				.contentType(MediaType.APPLICATION_JSON)
+				.content(objectMapper.writeValueAsBytes(req));
+		if (ifMatch != null) request.header(HttpHeaders.IF_MATCH, ifMatch);
+		return mvc.perform(request);
+	}
+
+	private ResultActions remove(String ifMatch) throws Exception {
+		var request = delete("/positions/{id}", ID);
+		if (ifMatch != null) request.header(HttpHeaders.IF_MATCH, ifMatch);
+		return mvc.perform(request);
+	}
+
+	private static PositionResponse position(long version) {
+		return PositionResponse.builder()
+				.id(ID)
+				.clientId(CLIENT)
+				.symbol("AAPL")
+				.quantity(10)
+				.avgPrice(new BigDecimal("1.50"))
+				.updatedAt(Instant.parse("2026-01-01T00:00:00Z"))
+				.version(version)
+				.build();
+	}
+}
@@ -0,0 +1,140 @@
+package portfolio_service.kafka;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class KeyOrderedBatchProcessorTest {
+
+	private KeyOrderedBatchProcessor processor;
+
+	@AfterEach
+	void tearDown() {
+		processor.close();
+	}
+
+	@Test
+	void keepsEachKeysRecordsInArrivalOrderAcrossShards() {
+		processor = new KeyOrderedBatchProcessor(4);
+		List<String> records = new ArrayList<>();
+		for (int i = 0; i < 50; i++) {
+			for (int k = 0; k < 8; k++) records.add("k" + k + ":" + i);
+		}
+		Map<String, List<Integer>> seen = new ConcurrentHashMap<>();
+		Map<String, String> threadOfKey = new ConcurrentHashMap<>();
+
+		processor.process(records, KeyOrderedBatchProcessorTest::key, shard -> {
+			for (String r : shard) {
+				pause();
+				seen.computeIfAbsent(key(r), k -> Collections.synchronizedList(new ArrayList<>())).add(seq(r));
+				threadOfKey.merge(key(r), Thread.currentThread().getName(),
+						(a, b) -> a.equals(b) ? a : "more than one thread");
+			}
+		});
+
+		assertThat(seen).hasSize(8);
+		for (List<Integer> order : seen.values()) {
+			assertThat(order).isSorted().hasSize(50);
+		}
+		assertThat(threadOfKey.values()).doesNotContain("more than one thread");
+		assertThat(threadOfKey.values()).allMatch(t -> t.startsWith("kafka-key-ordered-"));
+		assertThat(new HashSet<>(threadOfKey.values())).hasSizeGreaterThan(1);
+	}
+
+	@Test
+	void returnsOnlyAfterEveryShardIsDone() {
+		processor = new KeyOrderedBatchProcessor(2);
+		List<String> done = Collections.synchronizedList(new ArrayList<>());
+
+		processor.process(List.of("a:1", "b:1", "a:2", "b:2"), KeyOrderedBatchProcessorTest::key, shard -> {
+			if (key(shard.get(0)).equals("b")) sleep(100);
+			done.addAll(shard);
+		});
+
+		assertThat(done).containsExactlyInAnyOrder("a:1", "b:1", "a:2", "b:2");
+	}
+
+	@Test
+	void failedShardFailsTheBatchWithItsFirstRecord() {
+		processor = new KeyOrderedBatchProcessor(2);
+		List<String> done = Collections.synchronizedList(new ArrayList<>());
+
+		// "a" and "b" land in different shards of two
+		assertThatThrownBy(() -> processor.process(List.of("b:1", "a:1", "b:2", "a:2"),
+				KeyOrderedBatchProcessorTest::key, failing("a", done)))
+				.isInstanceOf(KeyOrderedBatchProcessor.ShardFailedException.class)
+				.hasRootCauseMessage("a failed")
+				.extracting(e -> ((KeyOrderedBatchProcessor.ShardFailedException) e).getFirstUnprocessed())
+				.isEqualTo("a:1");
+		// the healthy shard still ran to the end before the batch failed
+		assertThat(done).containsExactly("b:1", "b:2");
+	}
+
+	@Test
+	void reportsTheEarliestRecordWhenSeveralShardsFail() {
+		processor = new KeyOrderedBatchProcessor(2);
+
+		// "a" fails first, but "b" holds the earlier record
+		assertThatThrownBy(() -> processor.process(List.of("b:1", "a:1", "b:2"), KeyOrderedBatchProcessorTest::key,
+				shard -> {
+					if (key(shard.get(0)).equals("b")) sleep(50);
+					throw new IllegalStateException(key(shard.get(0)) + " failed");
+				}))
+				.isInstanceOf(KeyOrderedBatchProcessor.ShardFailedException.class)
+				.extracting(e -> ((KeyOrderedBatchProcessor.ShardFailedException) e).getFirstUnprocessed())
+				.isEqualTo("b:1");
+	}
+
+	@Test
+	void singleShardRunsInlineAndStillReportsFailure() {
+		processor = new KeyOrderedBatchProcessor(1);
+		List<String> done = new ArrayList<>();
+
+		assertThatThrownBy(() -> processor.process(List.of("a:1", "b:1"), KeyOrderedBatchProcessorTest::key,
+				failing("a", done)))
+				.isInstanceOf(KeyOrderedBatchProcessor.ShardFailedException.class)
+				.extracting(e -> ((KeyOrderedBatchProcessor.ShardFailedException) e).getFirstUnprocessed())
+				.isEqualTo("a:1");
+		assertThat(done).isEmpty();
+	}
+
+	private static Consumer<List<String>> failing(String failingKey, List<String> done) {
+		return shard -> {
+			for (String r : shard) {
+				if (key(r).equals(failingKey)) throw new IllegalStateException(failingKey + " failed");
+				done.add(r);
+			}
+		};
+	}
+
+	private static String key(String record) {
+		return record.substring(0, record.indexOf(':'));
+	}
+
+	private static int seq(String record) {
+		return Integer.parseInt(record.substring(record.indexOf(':') + 1));
+	}
+
+	private static void pause() {
+		if (ThreadLocalRandom.current().nextInt(10) == 0) Thread.yield();
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
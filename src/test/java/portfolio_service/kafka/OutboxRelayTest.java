@@ -0,0 +1,156 @@
+package portfolio_service.kafka;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.sql.ResultSet;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class OutboxRelayTest {
+
+	private final NamedParameterJdbcTemplate jdbc = mock(NamedParameterJdbcTemplate.class);
+	@SuppressWarnings("unchecked")
+	private final KafkaTemplate<String, Object> kafkaTemplate = mock(KafkaTemplate.class);
+
+	// each claim returns the next list, then nothing
+	private final Deque<List<Claimed>> claims = new ArrayDeque<>();
+	private final List<Long> sentIds = new ArrayList<>();
+	private final Set<Long> nacked = new HashSet<>();
+
+	private OutboxRelay relay;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		when(jdbc.getJdbcTemplate()).thenReturn(mock(JdbcTemplate.class));
+		when(jdbc.query(anyString(), anyMap(), any(RowMapper.class))).thenAnswer(inv -> {
+			String sql = inv.getArgument(0);
+			if (!sql.contains("UPDATE batch") || claims.isEmpty()) return List.of();
+			RowMapper<?> mapper = inv.getArgument(2);
+			List<Object> rows = new ArrayList<>();
+			for (Claimed r : claims.poll()) {
+				ResultSet rs = mock(ResultSet.class);
+				when(rs.getLong("id")).thenReturn(r.id());
+				when(rs.getString("message_key")).thenReturn(r.key());
+				when(rs.getString("payload")).thenReturn(r.payload());
+				rows.add(mapper.mapRow(rs, rows.size()));
+			}
+			return rows;
+		});
+		when(kafkaTemplate.send(any(ProducerRecord.class))).thenAnswer(inv -> {
+			ProducerRecord<String, Object> record = inv.getArgument(0);
+			long id = Long.parseLong(new String(record.headers().lastHeader("X-Trace-Id").value()));
+			sentIds.add(id);
+			return nacked.contains(id)
+					? CompletableFuture.failedFuture(new RuntimeException("not acked"))
+					: CompletableFuture.completedFuture(mock(SendResult.class));
+		});
+
+		relay = new OutboxRelay(jdbc, mock(PlatformTransactionManager.class), kafkaTemplate,
+				new ObjectMapper().registerModule(new JavaTimeModule()), new SimpleMeterRegistry());
+		ReflectionTestUtils.setField(relay, "topic", "positions");
+		ReflectionTestUtils.setField(relay, "batchSize", 500);
+		ReflectionTestUtils.setField(relay, "lease", Duration.ofSeconds(30));
+		ReflectionTestUtils.setField(relay, "sendTimeout", Duration.ofSeconds(1));
+		ReflectionTestUtils.setField(relay, "maxAttempts", 10);
+	}
+
+	@Test
+	void sendsClaimedRowsInIdOrder() {
+		// OUTPUT hands rows back in no particular order
+		claims.add(List.of(row(3, "a"), row(1, "a"), row(4, "b"), row(2, "b")));
+
+		relay.drain();
+
+		assertThat(sentIds).containsExactly(1L, 2L, 3L, 4L);
+	}
+
+	@Test
+	void deletesOnlyAckedRows() {
+		nacked.add(2L);
+		claims.add(List.of(row(1, "a"), row(2, "b"), row(3, "c")));
+
+		relay.drain();
+
+		verify(jdbc).update(startsWith("DELETE FROM position_outbox WHERE"), eq(Map.of("ids", List.of(1L, 3L))));
+	}
+
+	@Test
+	void nothingAckedDeletesNothing() {
+		nacked.add(1L);
+		claims.add(List.of(row(1, "a")));
+
+		relay.drain();
+
+		verify(jdbc, never()).update(startsWith("DELETE FROM position_outbox WHERE"), anyMap());
+	}
+
+	@Test
+	void rowThatCannotBeSentHoldsBackTheRestOfItsKey() {
+		claims.add(List.of(new Claimed(1, "a", "not json"), row(2, "a"), row(3, "b")));
+
+		relay.drain();
+
+		assertThat(sentIds).containsExactly(3L);
+		verify(jdbc).update(startsWith("UPDATE position_outbox SET claimed_until = NULL"), eq(Map.of("ids", List.of(2L))));
+		verify(jdbc).update(startsWith("DELETE FROM position_outbox WHERE"), eq(Map.of("ids", List.of(3L))));
+	}
+
+	@Test
+	void keepsClaimingWhileRowsComeBack() {
+		claims.add(List.of(row(1, "a")));
+		claims.add(List.of(row(2, "a")));
+		claims.add(List.of(row(3, "b")));
+
+		relay.drain();
+
+		assertThat(sentIds).containsExactly(1L, 2L, 3L);
+		assertThat(claims).isEmpty();
+	}
+
+	// the row id rides in traceId so the send stub can tell rows apart
+	private static Claimed row(long id, String key) {
+		String payload = """
+				{"eventId":"00000000-0000-0000-0000-%012d","eventType":"POSITION_UPDATED",
+				 "occurredAt":"2026-01-01T00:00:00Z","tenantId":"default","traceId":"%d",
+				 "payload":{"positionId":"00000000-0000-0000-0000-000000000001","clientId":"%s",
+				            "symbol":"AAPL","quantity":1,"avgPrice":1.00}}
+				""".formatted(id, id, key);
+		return new Claimed(id, key, payload);
+	}
+
+	private record Claimed(long id, String key, String payload) {}
+
+	private static String startsWith(String prefix) {
+		return argThat(sql -> sql != null && sql.startsWith(prefix));
+	}
+}
@@ -0,0 +1,275 @@
+package portfolio_service.redis;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import portfolio_service.config.ContextPropagatingTaskDecorator;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class CacheAsideExecutorTest {
+
+	private static final String KEY = "prod:default:cache:position:1";
+	private static final String LOCK_KEY = "prod:default:lock:position:1";
+	private static final Duration TTL = Duration.ofSeconds(60);
+	private static final Duration NEAR_TTL = Duration.ofSeconds(30);
+	private static final Duration NEGATIVE_TTL = Duration.ofSeconds(5);
+
+	// values starting with '!' don't decode
+	private static final CacheCodec<String> CODEC = CacheCodec.of(
+			s -> s.getBytes(StandardCharsets.UTF_8),
+			b -> {
+				String s = new String(b, StandardCharsets.UTF_8);
+				if (s.startsWith("!")) throw new IllegalArgumentException("corrupt");
+				return s;
+			});
+
+	private static final CacheAsidePolicy<String> LOCKED = CacheAsidePolicy.<String>builder()
+			.operation(CacheMetrics.Operation.GET_BY_ID)
+			.codec(CODEC)
+			.ttl(() -> TTL)
+			.nearTtl(NEAR_TTL)
+			.stampede(CacheAsidePolicy.Stampede.DISTRIBUTED_LOCK)
+			.negativeTtl(NEGATIVE_TTL)
+			.build();
+
+	private static final CacheAsidePolicy<String> EARLY_REFRESH = CacheAsidePolicy.<String>builder()
+			.operation(CacheMetrics.Operation.LIST_PAGE)
+			.codec(CODEC)
+			.ttl(() -> TTL)
+			.stampede(CacheAsidePolicy.Stampede.SINGLE_FLIGHT)
+			.earlyRefresh(true)
+			.build();
+
+	private RedisBytesCache cache;
+	private NearCache nearCache;
+	private RedisLock lock;
+	private CacheFillNotifier fillNotifier;
+	private SimpleMeterRegistry registry;
+	private CacheAsideExecutor executor;
+
+	@BeforeEach
+	void setUp() {
+		cache = mock(RedisBytesCache.class);
+		nearCache = mock(NearCache.class);
+		lock = mock(RedisLock.class);
+		fillNotifier = mock(CacheFillNotifier.class);
+		registry = new SimpleMeterRegistry();
+		executor = new CacheAsideExecutor(cache, nearCache, lock, new SingleFlight(), fillNotifier,
+				new CacheMetrics(registry, 100), new ContextPropagatingTaskDecorator(), true, 1.0, 1, 16);
+	}
+
+	@AfterEach
+	void tearDown() {
+		executor.close();
+	}
+
+	@Test
+	void nearHitSkipsRedisAndTheLoader() {
+		when(nearCache.getOrAbsent(eq(KEY), any())).thenReturn("v1");
+
+		String value = executor.get(LOCKED, KEY, LOCK_KEY, failingLoader());
+
+		assertThat(value).isEqualTo("v1");
+		verifyNoInteractions(cache, lock);
+		assertThat(lookups("getById", "near_hit")).isEqualTo(1);
+	}
+
+	@Test
+	void redisHitDecodesAndFillsTheNearCache() {
+		when(cache.get(KEY)).thenReturn(bytes("v1"));
+
+		String value = executor.get(LOCKED, KEY, LOCK_KEY, failingLoader());
+
+		assertThat(value).isEqualTo("v1");
+		verify(nearCache).put(KEY, "v1", NEAR_TTL);
+		verifyNoInteractions(lock);
+		assertThat(lookups("getById", "hit")).isEqualTo(1);
+	}
+
+	@Test
+	void corruptBytesFailOpenAndReload() {
+		when(cache.get(KEY)).thenReturn(bytes("!garbage"));
+		when(lock.tryLock(eq(LOCK_KEY), any())).thenReturn("token");
+
+		String value = executor.get(LOCKED, KEY, LOCK_KEY, () -> "v2");
+
+		assertThat(value).isEqualTo("v2");
+		verify(cache).set(KEY, bytes("v2"), TTL);
+		assertThat(failOpen("getById", "decode")).isGreaterThanOrEqualTo(1);
+	}
+
+	@Test
+	void lockWinnerLoadsWritesAndSignalsTheFill() {
+		when(lock.tryLock(eq(LOCK_KEY), any())).thenReturn("token");
+		AtomicInteger loads = new AtomicInteger();
+
+		String value = executor.get(LOCKED, KEY, LOCK_KEY, () -> {
+			loads.incrementAndGet();
+			return "v1";
+		});
+
+		assertThat(value).isEqualTo("v1");
+		assertThat(loads).hasValue(1);
+		verify(cache).set(KEY, bytes("v1"), TTL);
+		verify(nearCache).put(KEY, "v1", NEAR_TTL);
+		verify(lock).unlock(LOCK_KEY, "token");
+		verify(fillNotifier).notifyDone(KEY);
+	}
+
+	@Test
+	void lockLoserWaitsForTheWinnersFill() {
+		CompletableFuture<Void> filled = new CompletableFuture<>();
+		when(fillNotifier.register(KEY)).thenReturn(filled);
+		when(fillNotifier.await(eq(filled), any())).thenReturn(true);
+		// miss on the first read and the re-check after registering, then the winner's value
+		when(cache.get(KEY)).thenReturn(null, null, bytes("v1"));
+
+		String value = executor.get(LOCKED, KEY, LOCK_KEY, failingLoader());
+
+		assertThat(value).isEqualTo("v1");
+		verify(fillNotifier).unregister(KEY, filled);
+		verify(cache, never()).set(anyString(), any(), any());
+		verify(lock, never()).unlock(anyString(), anyString());
+		verify(fillNotifier, never()).notifyDone(anyString());
+		assertThat(registry.get("portfolio_cache_fill_wait").tag("result", "filled").timer().count()).isEqualTo(1);
+	}
+
+	@Test
+	void lockLoserLoadsItselfWhenTheFillTimesOut() {
+		CompletableFuture<Void> filled = new CompletableFuture<>();
+		when(fillNotifier.register(KEY)).thenReturn(filled);
+		when(fillNotifier.await(eq(filled), any())).thenReturn(false);
+
+		String value = executor.get(LOCKED, KEY, LOCK_KEY, () -> "v1");
+
+		assertThat(value).isEqualTo("v1");
+		verify(cache).set(KEY, bytes("v1"), TTL);
+		verify(lock, never()).unlock(anyString(), anyString());
+		assertThat(registry.get("portfolio_cache_fill_wait").tag("result", "timeout").timer().count()).isEqualTo(1);
+	}
+
+	@Test
+	void notFoundIsCachedAsTombstone() {
+		when(lock.tryLock(eq(LOCK_KEY), any())).thenReturn("token");
+
+		String value = executor.get(LOCKED, KEY, LOCK_KEY, () -> null);
+
+		assertThat(value).isNull();
+		verify(cache).setIfAbsent(eq(KEY), argThat(b -> b.length == 0), eq(NEGATIVE_TTL));
+		verify(nearCache).putAbsent(KEY, NEGATIVE_TTL);
+	}
+
+	@Test
+	void tombstoneInRedisIsServedWithoutLoading() {
+		when(cache.get(KEY)).thenReturn(new byte[0]);
+
+		String value = executor.get(LOCKED, KEY, LOCK_KEY, failingLoader());
+
+		assertThat(value).isNull();
+		verify(nearCache).putAbsent(KEY, NEGATIVE_TTL);
+		verifyNoInteractions(lock);
+		assertThat(lookups("getById", "negative_hit")).isEqualTo(1);
+	}
+
+	@Test
+	void missWithoutLoaderLoadsNothing() {
+		String value = executor.get(LOCKED, KEY, LOCK_KEY, null);
+
+		assertThat(value).isNull();
+		verifyNoInteractions(lock);
+		verify(cache, never()).setIfAbsent(anyString(), any(), any());
+		assertThat(lookups("getById", "filtered")).isEqualTo(1);
+		assertThat(lookups("getById", "miss")).isZero();
+	}
+
+	@Test
+	void earlyRefreshRunsOncePerKey() throws Exception {
+		// logically expired a while ago, so every hit asks for a refresh
+		byte[] meta = ("5:" + (System.currentTimeMillis() - 60_000)).getBytes(StandardCharsets.US_ASCII);
+		when(cache.mget(List.of(KEY, RedisKeys.refreshMeta(KEY)))).thenReturn(Arrays.asList(bytes("v1"), meta));
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicInteger loads = new AtomicInteger();
+		Supplier<String> loader = () -> {
+			loads.incrementAndGet();
+			started.countDown();
+			try {
+				release.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return "v2";
+		};
+
+		assertThat(executor.get(EARLY_REFRESH, KEY, LOCK_KEY, loader)).isEqualTo("v1");
+		assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+		// the first refresh is still running
+		assertThat(executor.get(EARLY_REFRESH, KEY, LOCK_KEY, loader)).isEqualTo("v1");
+		release.countDown();
+
+		verify(cache, timeout(5000)).set(KEY, bytes("v2"), TTL);
+		verify(cache, timeout(5000)).set(eq(RedisKeys.refreshMeta(KEY)), any(), eq(TTL));
+		assertThat(loads).hasValue(1);
+		assertThat(refreshes("listByClientPage", "started")).isEqualTo(1);
+		assertThat(refreshes("listByClientPage", "skipped")).isEqualTo(1);
+		verify(cache, never()).get(anyString());
+		verify(cache, never()).mget(argThat(keys -> keys.size() != 2));
+		verifyNoInteractions(lock);
+	}
+
+	@Test
+	void earlyRefreshIsSkippedWithoutLoader() {
+		byte[] meta = ("5:" + (System.currentTimeMillis() - 60_000)).getBytes(StandardCharsets.US_ASCII);
+		when(cache.mget(anyList())).thenReturn(Arrays.asList(bytes("v1"), meta));
+
+		assertThat(executor.get(EARLY_REFRESH, KEY, LOCK_KEY, null)).isEqualTo("v1");
+
+		assertThat(refreshes("listByClientPage", "started")).isZero();
+		assertThat(refreshes("listByClientPage", "skipped")).isZero();
+	}
+
+	private double lookups(String operation, String result) {
+		return registry.get("portfolio_cache_lookups").tag("operation", operation).tag("result", result).counter().count();
+	}
+
+	private double failOpen(String operation, String stage) {
+		return registry.get("portfolio_cache_fail_open").tag("operation", operation).tag("stage", stage).counter().count();
+	}
+
+	private double refreshes(String operation, String result) {
+		return registry.get("portfolio_cache_early_refresh").tag("operation", operation).tag("result", result).counter().count();
+	}
+
+	private static byte[] bytes(String s) {
+		return s.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static Supplier<String> failingLoader() {
+		return () -> {
+			throw new AssertionError("loader must not run");
+		};
+	}
+}
@@ -0,0 +1,74 @@
+package portfolio_service.redis;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class CacheFillNotifierTest {
+
+	private static final String KEY = "prod:default:cache:position:1";
+
+	private final CacheFillNotifier notifier = new CacheFillNotifier(mock(StringRedisTemplate.class));
+
+	@Test
+	void fillWakesEveryWaiterOfTheKey() {
+		CompletableFuture<Void> first = notifier.register(KEY);
+		CompletableFuture<Void> second = notifier.register(KEY);
+
+		filled(KEY);
+
+		assertThat(first).isCompleted();
+		assertThat(second).isCompleted();
+	}
+
+	@Test
+	void waiterLeavingDoesNotDropTheOthersSignal() {
+		CompletableFuture<Void> leaving = notifier.register(KEY);
+		CompletableFuture<Void> staying = notifier.register(KEY);
+
+		notifier.unregister(KEY, leaving);
+		filled(KEY);
+
+		assertThat(staying).isCompleted();
+		assertThat(leaving).isNotCompleted();
+	}
+
+	@Test
+	void unregisteredWaiterIsNotWoken() {
+		CompletableFuture<Void> signal = notifier.register(KEY);
+		notifier.unregister(KEY, signal);
+
+		filled(KEY);
+
+		assertThat(signal).isNotCompleted();
+	}
+
+	@Test
+	void awaitTimesOutWithoutAFill() {
+		CompletableFuture<Void> signal = notifier.register(KEY);
+
+		assertThat(notifier.await(signal, Duration.ofMillis(10))).isFalse();
+	}
+
+	@Test
+	void fillOfAnotherKeyIsIgnored() {
+		CompletableFuture<Void> signal = notifier.register(KEY);
+
+		filled("prod:default:cache:position:2");
+
+		assertThat(signal).isNotCompleted();
+	}
+
+	private void filled(String cacheKey) {
+		notifier.onMessage(new DefaultMessage(
+				RedisKeys.cacheFilledChannel("prod").getBytes(StandardCharsets.UTF_8),
+				cacheKey.getBytes(StandardCharsets.UTF_8)), null);
+	}
+}
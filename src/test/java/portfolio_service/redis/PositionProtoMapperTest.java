@@ -0,0 +1,99 @@
+package portfolio_service.redis;
+
+import org.junit.jupiter.api.Test;
+import portfolio_service.dto.PositionResponse;
+import portfolio_service.proto.Position;
+import portfolio_service.proto.PositionList;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PositionProtoMapperTest {
+
+	private static final Instant UPDATED_AT = Instant.parse("2026-03-01T12:00:00.123456Z");
+
+	@Test
+	void v2RoundTripKeepsEveryField() {
+		PositionResponse in = position("c1", "MSFT");
+
+		byte[] bytes = PositionProtoMapper.toBytes(in, PositionProtoMapper.Format.V2);
+
+		assertThat(bytes[0]).isEqualTo(PositionProtoMapper.FORMAT_V2);
+		assertSamePosition(PositionProtoMapper.fromBytes(bytes), in);
+	}
+
+	@Test
+	void readsV1BytesWrittenBeforeTheUpgrade() {
+		UUID id = UUID.randomUUID();
+		byte[] v1 = PositionList.newBuilder()
+				.addItems(Position.newBuilder()
+						.setId(id.toString())
+						.setClientId("c1")
+						.setSymbol("AAPL")
+						.setQuantity(7)
+						.setAvgPriceScaled(1_234_500)
+						.build())
+				.build()
+				.toByteArray();
+
+		List<PositionResponse> out = PositionProtoMapper.listFromBytes(v1);
+
+		assertThat(out).hasSize(1);
+		assertThat(out.get(0).getId()).isEqualTo(id);
+		assertThat(out.get(0).getSymbol()).isEqualTo("AAPL");
+		assertThat(out.get(0).getAvgPrice()).isEqualByComparingTo("123.45");
+	}
+
+	@Test
+	void v2ListIsSmallerThanV1AndDecodesTheSame() {
+		List<PositionResponse> in = List.of(position("c1", "MSFT"), position("c1", "AAPL"), position("c1", "MSFT"));
+
+		byte[] v1 = PositionProtoMapper.listToBytes(in, PositionProtoMapper.Format.V1);
+		byte[] v2 = PositionProtoMapper.listToBytes(in, PositionProtoMapper.Format.V2);
+
+		assertThat(v2.length).isLessThan(v1.length);
+		List<PositionResponse> out = PositionProtoMapper.listFromBytes(v2);
+		assertThat(out).hasSize(3);
+		for (int i = 0; i < in.size(); i++) {
+			assertSamePosition(out.get(i), in.get(i));
+		}
+	}
+
+	@Test
+	void listUpsertKeepsTheNewerCopy() {
+		PositionResponse newer = position("c1", "MSFT");
+		PositionResponse older = PositionResponse.builder()
+				.id(newer.getId()).clientId("c1").symbol("MSFT").quantity(1)
+				.avgPrice(BigDecimal.ONE).updatedAt(UPDATED_AT.minusSeconds(5)).version(2)
+				.build();
+		byte[] list = PositionProtoMapper.listToBytes(List.of(newer), PositionProtoMapper.Format.V2);
+
+		assertThat(PositionProtoMapper.listUpsert(list, older, PositionProtoMapper.Format.V2)).isNull();
+	}
+
+	private static PositionResponse position(String clientId, String symbol) {
+		return PositionResponse.builder()
+				.id(UUID.randomUUID())
+				.clientId(clientId)
+				.symbol(symbol)
+				.quantity(42)
+				.avgPrice(new BigDecimal("101.2500"))
+				.updatedAt(UPDATED_AT)
+				.version(3)
+				.build();
+	}
+
+	private static void assertSamePosition(PositionResponse actual, PositionResponse expected) {
+		assertThat(actual.getId()).isEqualTo(expected.getId());
+		assertThat(actual.getClientId()).isEqualTo(expected.getClientId());
+		assertThat(actual.getSymbol()).isEqualTo(expected.getSymbol());
+		assertThat(actual.getQuantity()).isEqualTo(expected.getQuantity());
+		assertThat(actual.getAvgPrice()).isEqualByComparingTo(expected.getAvgPrice());
+		assertThat(actual.getUpdatedAt()).isEqualTo(expected.getUpdatedAt());
+		assertThat(actual.getVersion()).isEqualTo(expected.getVersion());
+	}
+}
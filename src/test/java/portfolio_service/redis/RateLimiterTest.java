@@ -0,0 +1,112 @@
+package portfolio_service.redis;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RateLimiterTest {
+
+	private static final String KEY = "prod:default:rl:getPosition:10.0.0.1";
+
+	private final StringRedisTemplate redis = mock(StringRedisTemplate.class);
+	private final RateLimitProperties properties = new RateLimitProperties();
+	private final RateLimiter limiter = new RateLimiter(redis, properties);
+
+	@Test
+	void leaseIsSpentLocallyBeforeAskingRedisAgain() {
+		RateLimitProperties.Policy policy = leased(100);
+		redisGrants(100L, 100L);
+
+		for (int i = 0; i < 100; i++) {
+			assertThat(limiter.allow(KEY, policy)).isTrue();
+		}
+		verify(redis, times(1)).execute(any(RedisScript.class), anyList(), any(Object[].class));
+
+		// lease spent: the next request refills it from Redis
+		assertThat(limiter.allow(KEY, policy)).isTrue();
+		verify(redis, times(2)).execute(any(RedisScript.class), anyList(), any(Object[].class));
+	}
+
+	@Test
+	void deniedOnceLeaseIsSpentAndRedisGrantsNothing() {
+		RateLimitProperties.Policy policy = leased(3);
+		redisGrants(3L, 0L);
+
+		assertThat(limiter.allow(KEY, policy)).isTrue();
+		assertThat(limiter.allow(KEY, policy)).isTrue();
+		assertThat(limiter.allow(KEY, policy)).isTrue();
+		assertThat(limiter.allow(KEY, policy)).isFalse();
+	}
+
+	@Test
+	void singleTokenGrantIsNotLeased() {
+		RateLimitProperties.Policy policy = leased(100);
+		redisGrants(1L, 1L);
+
+		assertThat(limiter.allow(KEY, policy)).isTrue();
+		assertThat(limiter.allow(KEY, policy)).isTrue();
+		verify(redis, times(2)).execute(any(RedisScript.class), anyList(), any(Object[].class));
+	}
+
+	@Test
+	void failsOpenWhenRedisIsDown() {
+		when(redis.execute(any(RedisScript.class), anyList(), any(Object[].class)))
+				.thenThrow(new RedisConnectionFailureException("down"));
+
+		for (RateLimitProperties.Algorithm algorithm : RateLimitProperties.Algorithm.values()) {
+			RateLimitProperties.Policy policy = tokenBucket(1, Duration.ofSeconds(10));
+			policy.setAlgorithm(algorithm);
+			assertThat(limiter.allow(KEY, policy)).as(algorithm.name()).isTrue();
+		}
+	}
+
+	@Test
+	void failsOpenOnEmptyReply() {
+		redisGrants((Long) null);
+
+		assertThat(limiter.allow(KEY, tokenBucket(1, Duration.ofSeconds(10)))).isTrue();
+	}
+
+	@Test
+	void leaseSizeFollowsPerInstanceRate() {
+		// 0.5/s: every request asks Redis
+		assertThat(tokenBucket(5, Duration.ofSeconds(10)).effectiveLeaseSize(1)).isEqualTo(1);
+		// 1000/s split over 20 instances is 50/s, leased 100 ms at a time
+		assertThat(tokenBucket(1000, Duration.ofSeconds(1)).effectiveLeaseSize(20)).isEqualTo(5);
+		// capped at 100
+		assertThat(tokenBucket(100_000, Duration.ofSeconds(1)).effectiveLeaseSize(1)).isEqualTo(100);
+
+		RateLimitProperties.Policy fixed = tokenBucket(1000, Duration.ofSeconds(1));
+		fixed.setLeaseSize(7);
+		assertThat(fixed.effectiveLeaseSize(20)).isEqualTo(7);
+	}
+
+	private void redisGrants(Long first, Long... rest) {
+		when(redis.execute(any(RedisScript.class), anyList(), any(Object[].class))).thenReturn(first, (Object[]) rest);
+	}
+
+	// refills a token a second, so a lease outlives the test
+	private static RateLimitProperties.Policy leased(int leaseSize) {
+		RateLimitProperties.Policy policy = tokenBucket(1000, Duration.ofSeconds(1000));
+		policy.setLeaseSize(leaseSize);
+		return policy;
+	}
+
+	private static RateLimitProperties.Policy tokenBucket(long limit, Duration window) {
+		RateLimitProperties.Policy policy = new RateLimitProperties.Policy();
+		policy.setLimit(limit);
+		policy.setWindow(window);
+		return policy;
+	}
+}
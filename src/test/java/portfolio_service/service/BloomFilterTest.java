@@ -0,0 +1,59 @@
+package portfolio_service.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BloomFilterTest {
+
+	private static final int EXPECTED = 100_000;
+	private static final double FPP = 0.01;
+
+	@Test
+	void neverRejectsAnAddedId() {
+		Random rnd = new Random(42);
+		BloomFilter filter = new BloomFilter(EXPECTED, FPP);
+		List<UUID> added = new ArrayList<>(EXPECTED);
+		for (int i = 0; i < EXPECTED; i++) {
+			UUID id = randomV4(rnd);
+			filter.add(id);
+			added.add(id);
+		}
+
+		assertThat(added).allMatch(filter::mightContain);
+	}
+
+	@Test
+	void falsePositiveRateHoldsAtExpectedSize() {
+		Random rnd = new Random(7);
+		BloomFilter filter = new BloomFilter(EXPECTED, FPP);
+		for (int i = 0; i < EXPECTED; i++) filter.add(randomV4(rnd));
+
+		int probes = 200_000;
+		int falsePositives = 0;
+		for (int i = 0; i < probes; i++) {
+			if (filter.mightContain(randomV4(rnd))) falsePositives++;
+		}
+
+		assertThat((double) falsePositives / probes).isLessThan(FPP * 1.5);
+	}
+
+	@Test
+	void emptyFilterRejectsEverything() {
+		BloomFilter filter = new BloomFilter(EXPECTED, FPP);
+
+		assertThat(filter.mightContain(UUID.randomUUID())).isFalse();
+	}
+
+	// same fixed version/variant bits as UUID.randomUUID(), but reproducible
+	private static UUID randomV4(Random rnd) {
+		long msb = (rnd.nextLong() & ~0xf000L) | 0x4000L;
+		long lsb = (rnd.nextLong() & 0x3fffffffffffffffL) | 0x8000000000000000L;
+		return new UUID(msb, lsb);
+	}
+}